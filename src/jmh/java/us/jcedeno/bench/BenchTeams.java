@@ -0,0 +1,125 @@
+package us.jcedeno.bench;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+
+import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.TeamManagerSettings;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.sync.SyncTransport;
+
+/**
+ * Fixtures shared by the benchmarks: a team manager that never touches redis
+ * and synthetic teams.
+ * 
+ * @author jcedeno
+ */
+final class BenchTeams {
+
+    private BenchTeams() {
+    }
+
+    /**
+     * @param count The amount of teams.
+     * @param size  The amount of members of every team.
+     * @param seed  The seed of the ids, so every run uses the same teams.
+     * @return The teams, each with a distinct set of members.
+     */
+    static List<Team> teams(int count, int size, long seed) {
+        var random = new Random(seed);
+        var teams = new ArrayList<Team>(count);
+        for (int i = 0; i < count; i++) {
+            var members = new ArrayList<UUID>(size);
+            for (int j = 0; j < size; j++)
+                members.add(new UUID(random.nextLong(), random.nextLong()));
+            teams.add(new Team(new UUID(random.nextLong(), random.nextLong()), members, "team-" + i,
+                    random.nextInt(1000), System.currentTimeMillis() - random.nextInt(100_000), 1L));
+        }
+        return teams;
+    }
+
+    /**
+     * @return A team manager whose pipeline is fed by hand, holding nothing yet.
+     */
+    static Manager manager() {
+        return new Manager(new TeamManagerSettings());
+    }
+
+    /**
+     * @param players The players to report as online.
+     * @return A proxy that only knows about its online players.
+     */
+    static ProxyServer proxyWith(List<UUID> players) {
+        var online = new ArrayList<Player>(players.size());
+        for (var id : players)
+            online.add((Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[] { Player.class },
+                    (proxy, method, args) -> method.getName().equals("getUniqueId") ? id : null));
+        return (ProxyServer) Proxy.newProxyInstance(ProxyServer.class.getClassLoader(),
+                new Class<?>[] { ProxyServer.class },
+                (proxy, method, args) -> method.getName().equals("getAllPlayers") ? online : null);
+    }
+
+    /**
+     * A manager without redis, events only come in through
+     * {@link us.jcedeno.teams.sync.RedisSyncPipeline#message(String, byte[])}.
+     */
+    static class Manager extends TeamManager {
+
+        Manager(TeamManagerSettings settings) {
+            super(settings, new DetachedTransport());
+        }
+
+        @Override
+        public void updateTeam(Team team, UUID nodeId) {
+            applyRemoteUpdate(team);
+        }
+
+        @Override
+        public void processDestroyTeam(Team team, UUID nodeId) {
+            applyRemoteDestroy(team);
+        }
+
+        @Override
+        public void processCommand(String cmd, UUID nodeId) {
+        }
+    }
+
+    /**
+     * A transport that goes nowhere.
+     */
+    static class DetachedTransport implements SyncTransport {
+
+        @Override
+        public void start(BiConsumer<String, byte[]> receiver, Runnable resync) {
+        }
+
+        @Override
+        public long publish(String channel, byte[] message) {
+            return 0;
+        }
+
+        @Override
+        public CompletionStage<Long> publishAsync(String channel, byte[] message) {
+            return CompletableFuture.completedFuture(0L);
+        }
+
+        @Override
+        public boolean isUp() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package us.jcedeno.bench;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import us.jcedeno.teams.codec.TeamCodec;
+import us.jcedeno.teams.codec.TeamCodecs;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.objects.events.TeamCreationUpdate;
+
+/**
+ * Encoding and decoding of the teams stored in redis and of the events sent
+ * for every change, with the gson codec and the binary one.
+ * 
+ * @author jcedeno
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+    @Param({ "json", "binary" })
+    String codecName;
+    @Param({ "1", "100", "1000" })
+    int teamCount;
+    @Param({ "1", "4", "16" })
+    int teamSize;
+
+    private TeamCodec codec;
+    private Team[] teams;
+    private TeamCreationUpdate[] updates;
+    private byte[][] encodedTeams;
+    private byte[][] encodedUpdates;
+    private int next;
+
+    @Setup
+    public void setup() {
+        codec = TeamCodecs.byName(codecName);
+        teams = BenchTeams.teams(teamCount, teamSize, 42).toArray(new Team[0]);
+        updates = new TeamCreationUpdate[teams.length];
+        encodedTeams = new byte[teams.length][];
+        encodedUpdates = new byte[teams.length][];
+        var node = UUID.randomUUID();
+        for (int i = 0; i < teams.length; i++) {
+            updates[i] = new TeamCreationUpdate(teams[i], node);
+            encodedTeams[i] = codec.encodeTeam(teams[i]);
+            encodedUpdates[i] = codec.encodeCreationUpdate(updates[i]);
+        }
+    }
+
+    private int nextIndex() {
+        var index = next++;
+        if (next == teams.length)
+            next = 0;
+        return index;
+    }
+
+    @Benchmark
+    public byte[] encodeTeam() {
+        return codec.encodeTeam(teams[nextIndex()]);
+    }
+
+    @Benchmark
+    public Team decodeTeam() {
+        return codec.decodeTeam(encodedTeams[nextIndex()]);
+    }
+
+    @Benchmark
+    public byte[] encodeCreationUpdate() {
+        return codec.encodeCreationUpdate(updates[nextIndex()]);
+    }
+
+    @Benchmark
+    public TeamCreationUpdate decodeCreationUpdate() {
+        return codec.decodeCreationUpdate(encodedUpdates[nextIndex()]);
+    }
+
+}
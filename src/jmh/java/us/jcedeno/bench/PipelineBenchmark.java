@@ -0,0 +1,96 @@
+package us.jcedeno.bench;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import us.jcedeno.teams.objects.events.TeamCreationUpdate;
+import us.jcedeno.teams.sync.DedsafioChannels;
+import us.jcedeno.teams.sync.Envelope;
+import us.jcedeno.teams.sync.EventType;
+import us.jcedeno.teams.sync.RedisSyncPipeline;
+
+/**
+ * Handling of the messages recieved by the sync pipeline, from the raw bytes
+ * to the event being queued on the dispatcher, without redis. Updates from
+ * another node are decoded and dispatched, the ones sent by this node are
+ * dropped from the header.
+ * 
+ * @author jcedeno
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PipelineBenchmark {
+    private static final String CHANNEL = DedsafioChannels.EVENTS.fullName();
+    @Param({ "100", "1000", "10000" })
+    int teamCount;
+    @Param({ "1", "4", "16" })
+    int teamSize;
+
+    private BenchTeams.Manager manager;
+    private RedisSyncPipeline pipeline;
+    private byte[][] remoteUpdates;
+    private byte[][] ownUpdates;
+    private int next;
+
+    @Setup
+    public void setup() {
+        manager = BenchTeams.manager();
+        pipeline = manager.getSyncPipeline();
+        var codec = manager.getCodec();
+        var teams = BenchTeams.teams(teamCount, teamSize, 42);
+        var remote = UUID.randomUUID();
+        remoteUpdates = new byte[teams.size()][];
+        ownUpdates = new byte[teams.size()][];
+        for (int i = 0; i < teams.size(); i++) {
+            var team = teams.get(i);
+            remoteUpdates[i] = Envelope.wrap(remote, EventType.CREATE,
+                    codec.encodeCreationUpdate(new TeamCreationUpdate(team, remote)));
+            ownUpdates[i] = Envelope.wrap(manager.getNodeId(), EventType.CREATE,
+                    codec.encodeCreationUpdate(new TeamCreationUpdate(team, manager.getNodeId())));
+        }
+    }
+
+    /**
+     * Lets the dispatcher catch up, so the queue doesn't grow across iterations.
+     */
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        while (pipeline.getDispatcher().getQueueDepth() > 0)
+            Thread.sleep(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.disconect();
+    }
+
+    private int nextIndex() {
+        var index = next++;
+        if (next == remoteUpdates.length)
+            next = 0;
+        return index;
+    }
+
+    @Benchmark
+    public void remoteUpdate() {
+        pipeline.message(CHANNEL, remoteUpdates[nextIndex()]);
+    }
+
+    @Benchmark
+    public void selfUpdateDropped() {
+        pipeline.message(CHANNEL, ownUpdates[nextIndex()]);
+    }
+
+}
@@ -0,0 +1,85 @@
+package us.jcedeno.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.velocity.OnlineTeamsIndex;
+
+/**
+ * Lookups done on every command and join: the team of a player, whether a
+ * player is in a team and the teams with members online.
+ * 
+ * @author jcedeno
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TeamLookupBenchmark {
+    @Param({ "100", "1000", "10000" })
+    int teamCount;
+    @Param({ "1", "4", "16" })
+    int teamSize;
+
+    private BenchTeams.Manager manager;
+    private OnlineTeamsIndex onlineTeams;
+    private Team[] teams;
+    private UUID[] players;
+    private int next;
+
+    @Setup
+    public void setup() {
+        manager = BenchTeams.manager();
+        var created = BenchTeams.teams(teamCount, teamSize, 42);
+        teams = created.toArray(new Team[0]);
+        var all = new ArrayList<UUID>();
+        for (var team : created) {
+            manager.put(team);
+            all.addAll(team.getMembers());
+        }
+        players = all.toArray(new UUID[0]);
+        // Half the players online, so some teams are partially online.
+        onlineTeams = new OnlineTeamsIndex(BenchTeams.proxyWith(all.subList(0, all.size() / 2)), manager);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.disconect();
+    }
+
+    private int nextIndex(int bound) {
+        var index = next++;
+        if (next == Integer.MAX_VALUE)
+            next = 0;
+        return index % bound;
+    }
+
+    @Benchmark
+    public Team getPlayerTeam() {
+        return manager.getPlayerTeam(players[nextIndex(players.length)]);
+    }
+
+    @Benchmark
+    public boolean isMember() {
+        var index = nextIndex(players.length);
+        return teams[index / teamSize].isMember(players[index]);
+    }
+
+    @Benchmark
+    public List<Team> getTeamsOnlineList() {
+        return onlineTeams.getOnlineTeams();
+    }
+
+}
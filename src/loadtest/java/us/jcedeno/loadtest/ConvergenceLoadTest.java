@@ -0,0 +1,412 @@
+package us.jcedeno.loadtest;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+
+import us.jcedeno.loadtest.ConvergenceTracker.Operation;
+import us.jcedeno.teams.TeamManagerSettings;
+import us.jcedeno.teams.codec.TeamCodecs;
+import us.jcedeno.teams.metrics.LatencyHistogram;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.storage.DatasetLoader;
+import us.jcedeno.teams.storage.TeamScripts;
+import us.jcedeno.teams.sync.SyncTransport;
+import us.jcedeno.teams.velocity.VTeamManager;
+
+/**
+ * Starts several team managers in one jvm against the same redis and hammers
+ * them with concurrent creations, point additions, destructions and dataset
+ * changes. Reports the throughput of every operation, how long the nodes took
+ * to converge on it and, once the load stops, every team on which a node
+ * disagrees with redis.
+ * <p>
+ * Ran with {@code ./gradlew loadTest}, tuned with {@code -Dloadtest.*}
+ * properties. A redis-server is spawned unless {@code loadtest.redisUri} is
+ * set, in which case that redis must be a throwaway one. Exits with 1 if any
+ * node diverged.
+ *
+ * @author jcedeno
+ */
+public final class ConvergenceLoadTest {
+    private static final Logger logger = Logger.getLogger("loadtest");
+    /** Percentage of the operations of every kind, the rest adds points. */
+    private static final int CREATE_WEIGHT = 20;
+    private static final int DESTROY_WEIGHT = 15;
+    /** Teams are only created until there are at least this many. */
+    private static final int MIN_TEAMS = 50;
+    private final int nodeCount = Integer.getInteger("loadtest.nodes", 4);
+    private final int workers = Integer.getInteger("loadtest.workers", 4);
+    private final long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("loadtest.seconds", 30));
+    private final long datasetEveryMillis = Long.getLong("loadtest.datasetEveryMillis", 10_000);
+    private final long timeoutMillis = Long.getLong("loadtest.timeoutMillis", 10_000);
+    private final String codec = System.getProperty("loadtest.codec", "json");
+    private final SyncTransport.Type transport = SyncTransport.Type
+            .valueOf(System.getProperty("loadtest.transport", "PUBSUB"));
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final List<VTeamManager> nodes = new ArrayList<>();
+    private final TeamPool pool = new TeamPool();
+    private final Map<Operation, LongAdder> completed = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> callLatency = new EnumMap<>(Operation.class);
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger datasets = new AtomicInteger();
+    private ConvergenceTracker tracker;
+
+    private ConvergenceLoadTest() {
+        for (var operation : Operation.values()) {
+            completed.put(operation, new LongAdder());
+            callLatency.put(operation, new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var redisUri = System.getProperty("loadtest.redisUri");
+        var redis = redisUri == null ? LocalRedis.start(System.getProperty("loadtest.redisServer", "redis-server"))
+                : null;
+        int diverged;
+        try {
+            diverged = new ConvergenceLoadTest().run(redis != null ? redis.getUri() : redisUri);
+        } finally {
+            if (redis != null)
+                redis.close();
+        }
+        System.exit(diverged > 0 ? 1 : 0);
+    }
+
+    /**
+     * @param redisUri The URI of the redis all the nodes share.
+     * @return What {@link #printDivergence()} returned.
+     */
+    private int run(String redisUri) throws Exception {
+        var proxy = emptyProxy();
+        for (int i = 0; i < nodeCount; i++) {
+            var settings = new TeamManagerSettings();
+            settings.setCodec(TeamCodecs.byName(codec));
+            settings.setTransport(transport);
+            nodes.add(new VTeamManager(proxy, redisUri, settings));
+        }
+        try {
+            awaitPipelines();
+            // Every run writes to datasets of its own.
+            nodes.get(0).changeDataset(nextDataset(), true);
+            awaitGeneration(nodes.get(0).getGeneration());
+            tracker = new ConvergenceTracker(nodes, timeoutMillis);
+            tracker.start();
+            logger.info("Running " + nodeCount + " nodes x " + workers + " workers for " + durationMillis + "ms, "
+                    + transport + " transport, " + codec + " codec");
+
+            var elapsed = load();
+            var settled = tracker.awaitSettled(timeoutMillis);
+            awaitQueues();
+            tracker.stop();
+            printThroughput(elapsed, settled);
+            return printDivergence();
+        } finally {
+            for (var node : nodes)
+                node.disconect();
+        }
+    }
+
+    /**
+     * Runs the workers, and the dataset changes, for the configured duration.
+     *
+     * @return The nanos the load took.
+     */
+    private long load() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(nodeCount * workers + 1, runnable -> {
+            var thread = new Thread(runnable, "loadtest-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var start = System.nanoTime();
+        var deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        for (var node : nodes)
+            for (int i = 0; i < workers; i++)
+                executor.execute(() -> work(node, deadline));
+        if (datasetEveryMillis > 0)
+            executor.execute(() -> changeDatasets(deadline));
+        executor.shutdown();
+        if (!executor.awaitTermination(durationMillis + timeoutMillis, TimeUnit.MILLISECONDS))
+            logger.warning("Some operations were still running when the load ended");
+        return System.nanoTime() - start;
+    }
+
+    private void work(VTeamManager node, long deadline) {
+        var random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            var roll = random.nextInt(100);
+            try {
+                if (roll < CREATE_WEIGHT || pool.size() < MIN_TEAMS)
+                    create(node, random);
+                else if (roll < CREATE_WEIGHT + DESTROY_WEIGHT)
+                    destroy(node);
+                else
+                    addPoints(node, random);
+            } catch (Exception ex) {
+                if (errors.sum() < 10)
+                    logger.log(Level.WARNING, "Operation failed", ex);
+                errors.increment();
+            }
+        }
+    }
+
+    private void create(VTeamManager node, ThreadLocalRandom random) throws Exception {
+        var members = new UUID[1 + random.nextInt(4)];
+        for (int i = 0; i < members.length; i++)
+            members[i] = UUID.randomUUID();
+        var generation = node.getGeneration();
+        var start = System.nanoTime();
+        var team = node.createTeam("load-" + random.nextInt(1_000_000), members);
+        completed(Operation.CREATE, start);
+        tracker.trackWrite(Operation.CREATE, team.getTeamID(), team.getVersion(), generation, start);
+        pool.add(team.getTeamID());
+    }
+
+    private void addPoints(VTeamManager node, ThreadLocalRandom random) {
+        var teamId = pool.random();
+        var team = teamId != null ? node.getTeamsMap().get(teamId) : null;
+        if (team == null) {
+            // Not there yet, or already gone.
+            misses.increment();
+            return;
+        }
+        var generation = node.getGeneration();
+        var start = System.nanoTime();
+        var written = node.addPoints(team, 1 + random.nextInt(10));
+        completed(Operation.ADD_POINTS, start);
+        if (written != null)
+            tracker.trackWrite(Operation.ADD_POINTS, teamId, written.getVersion(), generation, start);
+    }
+
+    private void destroy(VTeamManager node) {
+        var teamId = pool.take();
+        var team = teamId != null ? node.getTeamsMap().get(teamId) : null;
+        if (team == null) {
+            misses.increment();
+            if (teamId != null)
+                pool.add(teamId);
+            return;
+        }
+        var generation = node.getGeneration();
+        var start = System.nanoTime();
+        var destroyed = node.destroyTeam(team);
+        completed(Operation.DESTROY, start);
+        if (destroyed != null)
+            tracker.trackDestroy(teamId, generation, start);
+    }
+
+    private void changeDatasets(long deadline) {
+        var random = ThreadLocalRandom.current();
+        while (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(datasetEveryMillis) < deadline) {
+            try {
+                Thread.sleep(datasetEveryMillis);
+                var node = nodes.get(random.nextInt(nodes.size()));
+                var start = System.nanoTime();
+                node.changeDataset(nextDataset(), true);
+                completed(Operation.CHANGE_DATASET, start);
+                tracker.trackDatasetChange(node.getGeneration(), start);
+                // The new dataset starts empty.
+                pool.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Dataset change failed", ex);
+                errors.increment();
+            }
+        }
+    }
+
+    private void completed(Operation operation, long startNanos) {
+        completed.get(operation).increment();
+        callLatency.get(operation).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    private String nextDataset() {
+        return "loadtest-" + runId + "-" + datasets.getAndIncrement();
+    }
+
+    private void awaitPipelines() throws InterruptedException {
+        var deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!nodes.stream().allMatch(VTeamManager::isPipelineUp)) {
+            if (System.currentTimeMillis() > deadline)
+                throw new IllegalStateException("The sync pipelines never came up");
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitGeneration(long generation) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!nodes.stream().allMatch(node -> node.getGeneration() >= generation)) {
+            if (System.currentTimeMillis() > deadline)
+                throw new IllegalStateException("The nodes never agreed on the initial dataset");
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitQueues() throws InterruptedException {
+        var deadline = System.currentTimeMillis() + timeoutMillis;
+        while (nodes.stream().anyMatch(node -> node.getPipelineQueueDepth() > 0)
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    private void printThroughput(long elapsedNanos, boolean settled) {
+        var seconds = elapsedNanos / 1e9;
+        long total = 0;
+        System.out.println();
+        System.out.printf("%-15s %9s %9s %10s %10s %10s %10s %10s %9s%n", "operation", "ops", "ops/s",
+                "call p50", "call p99", "conv p50", "conv p99", "conv max", "lost");
+        for (var operation : Operation.values()) {
+            var ops = completed.get(operation).sum();
+            var calls = callLatency.get(operation);
+            var convergence = tracker.getConvergence(operation);
+            total += ops;
+            System.out.printf("%-15s %9d %9.1f %10s %10s %10s %10s %10s %9d%n", operation, ops, ops / seconds,
+                    millis(calls.getPercentile(50)), millis(calls.getPercentile(99)),
+                    millis(convergence.getPercentile(50)), millis(convergence.getPercentile(99)),
+                    millis(convergence.getMax()), tracker.getTimedOut(operation));
+        }
+        System.out.printf("%d ops in %.1fs, %.1f ops/s. Times in ms, lost ops never converged within %dms.%n",
+                total, seconds, total / seconds, timeoutMillis);
+        long superseded = 0;
+        for (var operation : Operation.values())
+            superseded += tracker.getSuperseded(operation);
+        System.out.println(superseded + " ops superseded before converging, " + misses.sum()
+                + " skipped for a missing team, " + errors.sum() + " failed.");
+        if (!settled)
+            System.out.println(tracker.getPending() + " ops were still pending when the tracker stopped.");
+    }
+
+    /**
+     * Compares the teams in ram of every node with the ones in redis.
+     *
+     * @return The amount of teams on which some node diverged, plus the nodes
+     *         left on another dataset.
+     */
+    private int printDivergence() {
+        var reference = nodes.get(0);
+        var dataset = reference.getDataset();
+        var redis = reference.getRedisBinarySyncConnection();
+        var versions = redis.hgetall(TeamScripts.versionsKey(dataset));
+        var expected = new HashMap<UUID, Team>();
+        redis.hgetall(dataset).forEach((field, data) -> {
+            var team = reference.getCodec().decodeTeam(data);
+            var version = DatasetLoader.parseVersion(versions.get(field));
+            expected.put(team.getTeamID(), version >= 0 ? team.withVersion(version) : team);
+        });
+
+        var diverged = new HashMap<UUID, String>();
+        var lostNodes = 0;
+        System.out.println();
+        System.out.println(expected.size() + " teams in dataset " + dataset + ".");
+        for (int i = 0; i < nodes.size(); i++) {
+            var node = nodes.get(i);
+            if (!node.getDataset().equals(dataset)) {
+                System.out.println("node " + i + " is on dataset " + node.getDataset() + " instead.");
+                lostNodes++;
+                continue;
+            }
+            var local = node.getTeamsMap();
+            int missing = 0, stale = 0, mismatched = 0, ghosts = 0;
+            for (var team : expected.values()) {
+                var copy = local.get(team.getTeamID());
+                if (copy == null) {
+                    missing++;
+                    diverged.putIfAbsent(team.getTeamID(), "missing on node " + i);
+                } else if (copy.getVersion() != team.getVersion()) {
+                    stale++;
+                    diverged.putIfAbsent(team.getTeamID(), "version " + copy.getVersion() + " on node " + i + ", "
+                            + team.getVersion() + " in redis");
+                } else if (!sameContents(copy, team)) {
+                    mismatched++;
+                    diverged.putIfAbsent(team.getTeamID(), "different contents on node " + i + " at version "
+                            + team.getVersion());
+                }
+            }
+            for (var team : local.values()) {
+                if (!expected.containsKey(team.getTeamID())) {
+                    ghosts++;
+                    diverged.putIfAbsent(team.getTeamID(), "on node " + i + " but not in redis");
+                }
+            }
+            System.out.println("node " + i + ": " + local.size() + " teams, " + missing + " missing, " + stale
+                    + " stale, " + mismatched + " mismatched, " + ghosts + " not in redis.");
+        }
+        diverged.entrySet().stream().limit(10)
+                .forEach(entry -> System.out.println("  " + entry.getKey() + ": " + entry.getValue()));
+        if (diverged.isEmpty() && lostNodes == 0)
+            System.out.println("All nodes converged.");
+        else
+            System.out.println(diverged.size() + " teams diverged, " + lostNodes + " nodes on another dataset.");
+        return diverged.size() + lostNodes;
+    }
+
+    private static boolean sameContents(Team a, Team b) {
+        return Objects.equals(a.getPoints(), b.getPoints()) && Objects.equals(a.getMembers(), b.getMembers())
+                && Objects.equals(a.getTeamName(), b.getTeamName());
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+
+    /**
+     * @return A proxy without players, all the nodes share it.
+     */
+    private static ProxyServer emptyProxy() {
+        return (ProxyServer) Proxy.newProxyInstance(ProxyServer.class.getClassLoader(),
+                new Class<?>[] { ProxyServer.class },
+                (proxy, method, args) -> method.getName().equals("getAllPlayers") ? List.of() : null);
+    }
+
+    /**
+     * The ids of the teams the workers pick from, shared by every node.
+     */
+    private static class TeamPool {
+        private final List<UUID> ids = new ArrayList<>();
+
+        synchronized void add(UUID id) {
+            ids.add(id);
+        }
+
+        synchronized int size() {
+            return ids.size();
+        }
+
+        synchronized UUID random() {
+            return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        /**
+         * Removes a random id, so no other worker destroys the same team.
+         */
+        synchronized UUID take() {
+            if (ids.isEmpty())
+                return null;
+            var index = ThreadLocalRandom.current().nextInt(ids.size());
+            var last = ids.remove(ids.size() - 1);
+            return index == ids.size() ? last : ids.set(index, last);
+        }
+
+        synchronized void clear() {
+            ids.clear();
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package us.jcedeno.loadtest;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.metrics.LatencyHistogram;
+
+/**
+ * Measures how long every operation takes to be visible in all the nodes. A
+ * single thread polls the state in ram of every node for the operations still
+ * pending, so the times are accurate to the poll period.
+ * <p>
+ * Operations overtaken by a later destruction of their team, or by a dataset
+ * change, can never be seen and are counted as superseded instead.
+ *
+ * @author jcedeno
+ */
+final class ConvergenceTracker {
+    /** How long the poller sleeps between passes. */
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private final List<? extends TeamManager> nodes;
+    private final long allNodes;
+    private final long timeoutNanos;
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    /** Destroyed teams, updates of them issued earlier can't converge anymore. */
+    private final Map<UUID, Boolean> destroyed = new ConcurrentHashMap<>();
+    private final Map<Operation, LatencyHistogram> convergence = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> superseded = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> timedOut = new EnumMap<>(Operation.class);
+    private volatile long latestGeneration;
+    private volatile boolean running;
+    private Thread poller;
+
+    /**
+     * The operations the load test issues.
+     */
+    enum Operation {
+        CREATE, ADD_POINTS, DESTROY, CHANGE_DATASET
+    }
+
+    /**
+     * @param nodes         The nodes that must all see every operation, at most
+     *                      64.
+     * @param timeoutMillis How long an operation may take before it's counted
+     *                      as never converged.
+     */
+    ConvergenceTracker(List<? extends TeamManager> nodes, long timeoutMillis) {
+        if (nodes.size() > Long.SIZE)
+            throw new IllegalArgumentException("At most " + Long.SIZE + " nodes can be tracked");
+        this.nodes = nodes;
+        this.allNodes = nodes.size() == Long.SIZE ? -1L : (1L << nodes.size()) - 1;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (var operation : Operation.values()) {
+            convergence.put(operation, new LatencyHistogram());
+            superseded.put(operation, new LongAdder());
+            timedOut.put(operation, new LongAdder());
+        }
+        for (var node : nodes)
+            latestGeneration = Math.max(latestGeneration, node.getGeneration());
+    }
+
+    /**
+     * Starts polling the nodes.
+     */
+    synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        poller = new Thread(this::poll, "loadtest-convergence");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * Stops polling, operations still pending are left as they are.
+     */
+    synchronized void stop() throws InterruptedException {
+        running = false;
+        if (poller != null)
+            poller.join();
+    }
+
+    /**
+     * Tracks a team written by a node until every node holds that version of it,
+     * or a newer one.
+     *
+     * @param operation  The operation that wrote the team.
+     * @param teamId     The UUID of the team.
+     * @param version    The version written.
+     * @param generation The generation of the dataset of the writing node.
+     * @param startNanos When the operation was issued.
+     */
+    void trackWrite(Operation operation, UUID teamId, long version, long generation, long startNanos) {
+        pending.add(new Pending(operation, teamId, version, generation, startNanos));
+    }
+
+    /**
+     * Tracks the destruction of a team until no node holds it anymore.
+     *
+     * @param teamId     The UUID of the team.
+     * @param generation The generation of the dataset of the destroying node.
+     * @param startNanos When the operation was issued.
+     */
+    void trackDestroy(UUID teamId, long generation, long startNanos) {
+        destroyed.put(teamId, Boolean.TRUE);
+        pending.add(new Pending(Operation.DESTROY, teamId, 0, generation, startNanos));
+    }
+
+    /**
+     * Tracks a dataset change until every node has reached its generation. Every
+     * operation issued on an older generation is superseded.
+     *
+     * @param generation The generation after the change.
+     * @param startNanos When the operation was issued.
+     */
+    void trackDatasetChange(long generation, long startNanos) {
+        latestGeneration = Math.max(latestGeneration, generation);
+        pending.add(new Pending(Operation.CHANGE_DATASET, null, 0, generation, startNanos));
+    }
+
+    /**
+     * Waits for every pending operation to either converge or time out.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return True if nothing is pending anymore.
+     */
+    boolean awaitSettled(long timeoutMillis) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!pending.isEmpty()) {
+            if (System.currentTimeMillis() > deadline)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * @param operation An operation.
+     * @return The times, in micros, the operation took to be seen by every node.
+     */
+    LatencyHistogram getConvergence(Operation operation) {
+        return convergence.get(operation);
+    }
+
+    /**
+     * @param operation An operation.
+     * @return How many of those operations were overtaken before converging.
+     */
+    long getSuperseded(Operation operation) {
+        return superseded.get(operation).sum();
+    }
+
+    /**
+     * @param operation An operation.
+     * @return How many of those operations never converged.
+     */
+    long getTimedOut(Operation operation) {
+        return timedOut.get(operation).sum();
+    }
+
+    /**
+     * @return The amount of operations still pending.
+     */
+    int getPending() {
+        return pending.size();
+    }
+
+    private void poll() {
+        while (running) {
+            var now = System.nanoTime();
+            for (var iterator = pending.iterator(); iterator.hasNext();) {
+                var op = iterator.next();
+                if (isSuperseded(op)) {
+                    superseded.get(op.operation).increment();
+                    iterator.remove();
+                    continue;
+                }
+                for (int i = 0; i < nodes.size(); i++) {
+                    if ((op.seenBy & (1L << i)) == 0 && isVisible(op, nodes.get(i)))
+                        op.seenBy |= 1L << i;
+                }
+                if (op.seenBy == allNodes) {
+                    convergence.get(op.operation).record(TimeUnit.NANOSECONDS.toMicros(now - op.startNanos));
+                    iterator.remove();
+                } else if (now - op.startNanos > timeoutNanos) {
+                    timedOut.get(op.operation).increment();
+                    iterator.remove();
+                }
+            }
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+    }
+
+    private boolean isSuperseded(Pending op) {
+        if (op.operation == Operation.CHANGE_DATASET)
+            return op.generation < latestGeneration;
+        if (op.generation < latestGeneration)
+            return true;
+        return op.operation != Operation.DESTROY && destroyed.containsKey(op.teamId);
+    }
+
+    private static boolean isVisible(Pending op, TeamManager node) {
+        if (op.operation == Operation.CHANGE_DATASET)
+            return node.getGeneration() >= op.generation;
+        var team = node.getTeamsMap().get(op.teamId);
+        if (op.operation == Operation.DESTROY)
+            return team == null;
+        return team != null && team.getVersion() >= op.version;
+    }
+
+    /**
+     * An operation not yet seen by every node. Only the poller touches
+     * {@link #seenBy}.
+     */
+    private static class Pending {
+        private final Operation operation;
+        private final UUID teamId;
+        private final long version;
+        private final long generation;
+        private final long startNanos;
+        private long seenBy;
+
+        private Pending(Operation operation, UUID teamId, long version, long generation, long startNanos) {
+            this.operation = operation;
+            this.teamId = teamId;
+            this.version = version;
+            this.generation = generation;
+            this.startNanos = startNanos;
+        }
+    }
+
+}
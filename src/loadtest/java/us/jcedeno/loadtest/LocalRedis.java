@@ -0,0 +1,92 @@
+package us.jcedeno.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A throwaway redis-server spawned on a free local port, without persistence,
+ * so every run starts from an empty database.
+ *
+ * @author jcedeno
+ */
+final class LocalRedis implements AutoCloseable {
+    private static final long STARTUP_TIMEOUT_MILLIS = 5000;
+    private final Process process;
+    private final int port;
+
+    private LocalRedis(Process process, int port) {
+        this.process = process;
+        this.port = port;
+    }
+
+    /**
+     * Spawns a redis-server and waits until it answers to PING.
+     *
+     * @param executable The path of the redis-server binary.
+     * @return The running server.
+     * @throws IOException If the server couldn't be started or never answered.
+     */
+    static LocalRedis start(String executable) throws IOException {
+        int port;
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        var process = new ProcessBuilder(executable, "--port", Integer.toString(port), "--bind", "127.0.0.1",
+                "--save", "", "--appendonly", "no").redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        var redis = new LocalRedis(process, port);
+        var deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (!redis.ping()) {
+            if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                redis.close();
+                throw new IOException("redis-server didn't start on port " + port);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                redis.close();
+                throw new IOException("Interrupted while waiting for redis-server", e);
+            }
+        }
+        return redis;
+    }
+
+    /**
+     * @return The URI to connect to the server.
+     */
+    String getUri() {
+        return "redis://127.0.0.1:" + port;
+    }
+
+    private boolean ping() {
+        try (var socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), 200);
+            socket.setSoTimeout(200);
+            socket.getOutputStream().write("PING\r\n".getBytes(StandardCharsets.US_ASCII));
+            var reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            return "+PONG".equals(reader.readLine());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS))
+                process.destroyForcibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+    }
+
+}
@@ -1,11 +1,16 @@
 package us.jcedeno;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 import com.google.inject.Inject;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.player.ServerConnectedEvent;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
@@ -13,10 +18,23 @@ import com.velocitypowered.api.proxy.ProxyServer;
 import org.slf4j.Logger;
 
 import lombok.Getter;
+import net.kyori.adventure.text.minimessage.MiniMessage;
 import us.jcedeno.commands.GetResourcePack;
+import us.jcedeno.commands.NodeCommand;
 import us.jcedeno.commands.SendCommand;
 import us.jcedeno.commands.SpreadPlayers;
 import us.jcedeno.commands.SpreadTeams;
+import us.jcedeno.commands.StatsCommand;
+import us.jcedeno.join.JoinPipeline;
+import us.jcedeno.resourcepack.PackHttpServer;
+import us.jcedeno.resourcepack.ResourcePack;
+import us.jcedeno.spread.ClusterSpread;
+import us.jcedeno.spread.PlacementEngine;
+import us.jcedeno.spread.TransferScheduler;
+import us.jcedeno.teams.TeamManagerSettings;
+import us.jcedeno.teams.codec.TeamCodecs;
+import us.jcedeno.teams.sync.SyncTransport;
+import us.jcedeno.teams.velocity.PlayerDirectoryTracker;
 import us.jcedeno.teams.velocity.VTeamManager;
 import us.jcedeno.utils.JsonConfig;
 
@@ -32,6 +50,12 @@ public class DedsafioProxy {
     private final Logger logger;
     private @Getter VTeamManager teamManager;
     private @Getter JsonConfig jsonConfig;
+    private @Getter PlacementEngine placementEngine;
+    private @Getter TransferScheduler transferScheduler;
+    private @Getter ClusterSpread clusterSpread;
+    private @Getter ResourcePack resourcePack;
+    private @Getter PackHttpServer packServer;
+    private @Getter JoinPipeline joinPipeline;
 
     @Inject
     public DedsafioProxy(ProxyServer server, Logger logger) {
@@ -47,14 +71,74 @@ public class DedsafioProxy {
             ex.printStackTrace();
         }
         var redisUri = jsonConfig != null ? jsonConfig.getRedisUri() : null;
+        var settings = new TeamManagerSettings();
+        if (jsonConfig != null) {
+            settings.setCodec(TeamCodecs.byName(jsonConfig.getString("codec", "json")));
+            settings.setTransport(
+                    SyncTransport.Type.valueOf(jsonConfig.getString("syncTransport", "pubsub").toUpperCase()));
+            settings.setStreamMaxLength(jsonConfig.getLong("streamMaxLength", settings.getStreamMaxLength()));
+            settings.setSnapshotMaxCount((int) jsonConfig.getLong("snapshotMaxCount", settings.getSnapshotMaxCount()));
+            var maxAgeHours = TimeUnit.MILLISECONDS.toHours(settings.getSnapshotMaxAgeMillis());
+            settings.setSnapshotMaxAgeMillis(
+                    TimeUnit.HOURS.toMillis(jsonConfig.getLong("snapshotMaxAgeHours", maxAgeHours)));
+        }
         // Hook the team , ensure no nulls
-        this.teamManager = new VTeamManager(server, redisUri != null ? redisUri : "redis://147.182.135.68");
+        this.teamManager = new VTeamManager(server, redisUri != null ? redisUri : "redis://147.182.135.68", settings);
+        server.getEventManager().register(this, teamManager.getOnlineTeams());
+        var membership = teamManager.getMembership();
+        membership.setPlayerCount(server::getPlayerCount);
+        if (jsonConfig != null) {
+            membership.setName(jsonConfig.getString("nodeName", membership.getName()));
+            membership.setIntervalMillis(jsonConfig.getLong("heartbeatMillis", membership.getIntervalMillis()));
+            membership.setTtlMillis(membership.getIntervalMillis() * 3);
+        }
+        membership.start();
+        teamManager.getMetrics().register(membership.getName());
+        server.getEventManager().register(this,
+                new PlayerDirectoryTracker(server, teamManager.getPlayerDirectory()));
+        teamManager.getPlayerDirectory().start();
+        this.placementEngine = new PlacementEngine(
+                jsonConfig != null ? (int) jsonConfig.getLong("serverCapacity", 100) : 100);
+        var capacities = jsonConfig != null ? jsonConfig.getObject("serverCapacities") : null;
+        if (capacities != null)
+            capacities.entrySet().forEach(entry -> placementEngine.setCapacity(entry.getKey(),
+                    entry.getValue().getAsInt()));
+        this.transferScheduler = new TransferScheduler(server, this);
+        if (jsonConfig != null) {
+            transferScheduler.setMaxConcurrentPerTarget(
+                    (int) jsonConfig.getLong("transferConcurrency", transferScheduler.getMaxConcurrentPerTarget()));
+            transferScheduler
+                    .setRatePerTarget(jsonConfig.getLong("transferRate", (long) transferScheduler.getRatePerTarget()));
+            transferScheduler
+                    .setMaxAttempts((int) jsonConfig.getLong("transferAttempts", transferScheduler.getMaxAttempts()));
+        }
+        this.clusterSpread = new ClusterSpread(server, this, teamManager, placementEngine, transferScheduler);
+        if (jsonConfig != null)
+            clusterSpread.setCensusMillis(jsonConfig.getLong("spreadCensusMillis", clusterSpread.getCensusMillis()));
+        this.resourcePack = createResourcePack();
+        this.joinPipeline = new JoinPipeline(server, this);
+        if (jsonConfig != null)
+            joinPipeline.setBatchSize((int) jsonConfig.getLong("joinBatchSize", joinPipeline.getBatchSize()));
+        joinPipeline.addStep("resourcepack", this::sendResourcepack);
+        joinPipeline.addStep("team", player -> {
+            var team = teamManager.getPlayerTeam(player.getUniqueId());
+            if (team != null)
+                player.sendMessage(
+                        MiniMessage.get().parse("<green>You're playing with team <aqua>" + team.getTeamName()));
+        });
+        joinPipeline.start(100, TimeUnit.MILLISECONDS);
         // Register commands
         var cmdManager = server.getCommandManager();
 
-        cmdManager.register(cmdManager.metaBuilder("send").build(), new SendCommand(server));
+        cmdManager.register(cmdManager.metaBuilder("send").build(),
+                new SendCommand(server, transferScheduler, teamManager));
+
+        cmdManager.register(cmdManager.metaBuilder("node-cmd").build(), new NodeCommand(teamManager));
 
-        cmdManager.register(cmdManager.metaBuilder("spread").build(), new SpreadPlayers(server));
+        cmdManager.register(cmdManager.metaBuilder("dedsafio-stats").build(), new StatsCommand(this));
+
+        cmdManager.register(cmdManager.metaBuilder("spread").build(),
+                new SpreadPlayers(server, placementEngine, transferScheduler));
 
         cmdManager.register(cmdManager.metaBuilder("spread-teams").build(), new SpreadTeams(this));
 
@@ -63,20 +147,66 @@ public class DedsafioProxy {
 
     }
 
-    public void sendResourcepack(Player player, String url) {
-        player.sendResourcePackOffer(server.createResourcePackBuilder(url).setShouldForce(false).build());
+    private ResourcePack createResourcePack() {
+        var url = jsonConfig != null ? jsonConfig.getString("resourcePackUrl", RESOURCEPACK_URL) : RESOURCEPACK_URL;
+        var file = jsonConfig != null ? jsonConfig.getString("resourcePackFile", null) : null;
+        var port = jsonConfig != null ? (int) jsonConfig.getLong("packServerPort", 0) : 0;
+        var host = jsonConfig != null ? jsonConfig.getString("packServerHost", "0.0.0.0") : null;
+        // Serve the local copy ourselves when asked to, instead of the outside host.
+        var serve = file != null && port > 0;
+        if (serve) {
+            var servedUrl = jsonConfig.getString("packServerUrl", null);
+            // A wildcard bind address can't be reached by clients, so it can't be advertised.
+            var bind = new InetSocketAddress(host, port);
+            if (servedUrl == null && (bind.isUnresolved() || !bind.getAddress().isAnyLocalAddress()))
+                servedUrl = "http://" + host + ":" + port + "/pack.zip";
+            if (servedUrl != null) {
+                url = servedUrl;
+            } else {
+                logger.error("The resource pack server binds to " + host + ", set packServerUrl to the address"
+                        + " clients reach it at. Sending " + url + " instead");
+                serve = false;
+            }
+        }
+        var pack = new ResourcePack(server, url, file != null ? Path.of(file) : null);
+        if (serve) {
+            var maxDownloads = (int) jsonConfig.getLong("packServerMaxDownloads", 64);
+            this.packServer = new PackHttpServer(new InetSocketAddress(host, port), URI.create(url).getPath(),
+                    Path.of(file), pack::getHashHex, maxDownloads);
+            try {
+                packServer.start();
+            } catch (IOException ex) {
+                logger.error("Couldn't start the resource pack server", ex);
+            }
+        }
+        var sha1 = jsonConfig != null ? jsonConfig.getString("resourcePackSha1", null) : null;
+        if (sha1 != null) {
+            pack.setHash(ResourcePack.fromHex(sha1));
+        } else {
+            pack.rehash();
+            pack.watch(this, 30, TimeUnit.SECONDS);
+        }
+        return pack;
     }
 
     @Subscribe
-    public void onConnected(ServerConnectedEvent e) {
-        var server = e.getServer();
+    public void onProxyShutdown(ProxyShutdownEvent e) {
+        joinPipeline.stop();
+        teamManager.getPlayerDirectory().stop();
+        teamManager.getMembership().stop();
+        if (packServer != null)
+            packServer.stop();
+    }
 
-        if (!e.getPreviousServer().isPresent()) {
+    public void sendResourcepack(Player player) {
+        resourcePack.offer(player);
+    }
 
-            System.out.println("Server " + server.getServerInfo().getName());
-            this.server.getScheduler().buildTask(this, () -> sendResourcepack(e.getPlayer(), RESOURCEPACK_URL))
-                    .delay(3, TimeUnit.SECONDS).schedule();
-        }
+    @Subscribe
+    public void onConnected(ServerConnectedEvent e) {
+        // Only the first connection is a join, the rest are server switches.
+        if (!e.getPreviousServer().isPresent())
+            joinPipeline.enqueue(e.getPlayer());
 
     }
 
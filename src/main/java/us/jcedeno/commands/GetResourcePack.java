@@ -7,6 +7,7 @@ import com.velocitypowered.api.proxy.Player;
 
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import us.jcedeno.DedsafioProxy;
+import us.jcedeno.resourcepack.ResourcePack;
 
 public class GetResourcePack implements SimpleCommand {
 
@@ -20,10 +21,22 @@ public class GetResourcePack implements SimpleCommand {
     @Override
     public void execute(Invocation invocation) {
         var src = invocation.source();
+        var args = invocation.arguments();
+        if (args.length > 0 && args[0].equalsIgnoreCase("rehash")) {
+            if (!src.hasPermission("desafiocommand.admin")) {
+                src.sendMessage(mini.parse("<red>You don't have permission to rehash the resourcepack."));
+                return;
+            }
+            src.sendMessage(mini.parse("<green>Rehashing the resourcepack..."));
+            proxy.getResourcePack().rehash().whenComplete((sha1, ex) -> src.sendMessage(mini.parse(ex != null
+                    ? "<red>Couldn't hash the resourcepack: " + ex.getMessage()
+                    : "<green>Resourcepack hash is " + ResourcePack.toHex(sha1))));
+            return;
+        }
         if (src instanceof Player player) {
             player.sendMessage(mini.parse("<green>You've successfully requested the resourcepack."));
             this.proxy.getServer().getScheduler()
-                    .buildTask(this.proxy, () -> proxy.sendResourcepack(player, DedsafioProxy.RESOURCEPACK_URL))
+                    .buildTask(this.proxy, () -> proxy.sendResourcepack(player))
                     .delay(3, TimeUnit.SECONDS).schedule();
         }
 
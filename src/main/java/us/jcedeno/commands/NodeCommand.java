@@ -0,0 +1,47 @@
+package us.jcedeno.commands;
+
+import java.util.concurrent.TimeUnit;
+
+import com.velocitypowered.api.command.SimpleCommand;
+
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import us.jcedeno.teams.TeamManager;
+
+/**
+ * Runs a command in every other proxy and reports which of them ran it.
+ */
+public class NodeCommand implements SimpleCommand {
+
+    private final TeamManager teamManager;
+    private static MiniMessage mini = MiniMessage.get();
+
+    public NodeCommand(TeamManager teamManager) {
+        this.teamManager = teamManager;
+    }
+
+    @Override
+    public void execute(Invocation invocation) {
+        var src = invocation.source();
+        var args = invocation.arguments();
+        if (args.length < 1) {
+            src.sendMessage(mini.parse("<red>Usage: /node-cmd <command>"));
+            return;
+        }
+
+        var cmd = String.join(" ", args);
+        teamManager.sendCommand(cmd, 5, TimeUnit.SECONDS).thenAccept(result -> {
+            src.sendMessage(mini.parse((result.isAllSucceeded() ? "<green>" : "<red>") + result));
+            for (var ack : result.getAcks().values()) {
+                if (!ack.isSuccess())
+                    src.sendMessage(mini.parse("<red>Node " + ack.getNode() + " failed: " + ack.getError()));
+            }
+        });
+
+    }
+
+    @Override
+    public boolean hasPermission(Invocation invocation) {
+        return invocation.source().hasPermission("desafiocommand.admin");
+    }
+
+}
@@ -1,17 +1,27 @@
 package us.jcedeno.commands;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.ProxyServer;
 
 import net.kyori.adventure.text.minimessage.MiniMessage;
+import us.jcedeno.spread.TransferScheduler;
+import us.jcedeno.teams.TeamManager;
 
 public class SendCommand implements SimpleCommand {
 
     private final ProxyServer proxy;
+    private final TransferScheduler transferScheduler;
+    private final TeamManager teamManager;
     private static MiniMessage mini = MiniMessage.get();
 
-    public SendCommand(ProxyServer proxy) {
+    public SendCommand(ProxyServer proxy, TransferScheduler transferScheduler, TeamManager teamManager) {
         this.proxy = proxy;
+        this.transferScheduler = transferScheduler;
+        this.teamManager = teamManager;
     }
 
     @Override
@@ -31,17 +41,42 @@ public class SendCommand implements SimpleCommand {
             var player = optionalPlayer.get();
             if (optionalServer.isPresent()) {
                 var server1 = optionalServer.get();
-                player.createConnectionRequest(server1).fireAndForget();
+                transferScheduler.submit(player, server1).completion().thenAccept(batch -> {
+                    if (batch.getFailed() > 0)
+                        src.sendMessage(mini.parse("<red>Couldn't send " + batch.getFailures().get(0)));
+                });
                 src.sendMessage(mini.parse("Created a send request for " + player.getUsername() + " to server "
                         + server1.getServerInfo().getName()));
                 return;
             }
         }
+        if (optionalPlayer.isEmpty() && optionalServer.isPresent()) {
+            // Connected through another proxy, only that one can move them.
+            forward(src, targetPlayer, targetServer);
+            return;
+        }
 
         src.sendMessage(mini.parse("Couldn't send player " + targetPlayer + " to server " + targetServer));
 
     }
 
+    private void forward(CommandSource src, String targetPlayer, String targetServer) {
+        teamManager.getPlayerDirectory().find(targetPlayer).thenCompose(location -> {
+            if (location == null || location.getNodeId().equals(teamManager.getNodeId()))
+                return CompletableFuture.completedFuture(null);
+            return teamManager.sendCommand("send " + location.getName() + " " + targetServer, 5, TimeUnit.SECONDS,
+                    location.getNodeId());
+        }).whenComplete((result, ex) -> {
+            if (ex != null || result == null)
+                src.sendMessage(mini.parse("Couldn't send player " + targetPlayer + " to server " + targetServer));
+            else if (result.isAllSucceeded())
+                src.sendMessage(mini.parse("Created a send request for " + targetPlayer + " to server "
+                        + targetServer + " in another proxy"));
+            else
+                src.sendMessage(mini.parse("<red>The proxy of " + targetPlayer + " didn't send them: " + result));
+        });
+    }
+
     @Override
     public boolean hasPermission(Invocation invocation) {
         return invocation.source().hasPermission("desafiocommand.admin");
@@ -1,6 +1,7 @@
 package us.jcedeno.commands;
 
 import java.util.ArrayList;
+import java.util.logging.Logger;
 
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
@@ -8,14 +9,23 @@ import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 
 import net.kyori.adventure.text.minimessage.MiniMessage;
+import us.jcedeno.spread.PlacementEngine;
+import us.jcedeno.spread.SpreadGroup;
+import us.jcedeno.spread.TransferProgress;
+import us.jcedeno.spread.TransferScheduler;
 
 public class SpreadPlayers implements SimpleCommand {
 
     private final ProxyServer proxy;
+    private final PlacementEngine placementEngine;
+    private final TransferScheduler transferScheduler;
     private static MiniMessage mini = MiniMessage.get();
+    private static final Logger logger = Logger.getLogger("spread");
 
-    public SpreadPlayers(ProxyServer proxy) {
+    public SpreadPlayers(ProxyServer proxy, PlacementEngine placementEngine, TransferScheduler transferScheduler) {
         this.proxy = proxy;
+        this.placementEngine = placementEngine;
+        this.transferScheduler = transferScheduler;
     }
 
     @Override
@@ -37,19 +47,13 @@ public class SpreadPlayers implements SimpleCommand {
 
             RegisteredServer senderServer = player.getCurrentServer().get().getServer();
             var players = senderServer.getPlayersConnected();
+            var plan = placementEngine.plan(SpreadGroup.ofEach(players), servers);
             player.sendMessage(mini.parse("&aSpreading " + players.size() + " players into &b" + servers.size()
                     + " &aservers [" + args + "]"));
-            var iter = players.iterator();
-            var count = 0;
-            while (iter.hasNext()) {
-                if (count >= servers.size())
-                    count = 0;
-                var nP = iter.next();
-                var targetServer = servers.get(count);
-                nP.createConnectionRequest(targetServer).fireAndForget();
-                System.out.println("Sending " + nP.getUsername() + " to " + targetServer.getServerInfo().getName());
-                count++;
-            }
+            if (!plan.getUnplaced().isEmpty())
+                player.sendMessage(mini.parse("<red>" + plan.getUnplaced().size() + " players didn't fit anywhere"));
+            logger.fine(() -> "Spreading " + plan.getMoves().size() + " players into " + servers.size() + " servers");
+            TransferProgress.reportTo(player, transferScheduler.submit(plan.getMoves()));
         }
 
     }
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 
 import com.velocitypowered.api.command.SimpleCommand;
 import com.velocitypowered.api.proxy.Player;
-import com.velocitypowered.api.proxy.server.RegisteredServer;
 
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import us.jcedeno.DedsafioProxy;
@@ -28,41 +27,14 @@ public class SpreadTeams implements SimpleCommand {
         }
 
         if (src instanceof Player player) {
-            var servers = new ArrayList<RegisteredServer>();
+            var servers = new ArrayList<String>();
             for (var arg : args) {
-                var server = proxy.getServer().getServer(arg);
-                if (server.isPresent())
-                    servers.add(server.get());
-            }
-
-            var senderServer = player.getCurrentServer().get().getServer();
-            var teams = proxy.getTeamManager().getTeamsOnlineList();
-            player.sendMessage(mini.parse(
-                    "&aSpreading " + teams.size() + " teams into &b" + servers.size() + " &aservers [" + args + "]"));
-            var iter = teams.iterator();
-
-            var count = 0;
-            while (iter.hasNext()) {
-                if (count >= servers.size())
-                    count = 0;
-                var nP = iter.next();
-                var targetServer = servers.get(count);
-                for (var m : nP.getMembers()) {
-                    proxy.getServer().getPlayer(m).ifPresent(present -> {
-                        var current = present.getCurrentServer();
-                        if (current.isPresent() && current.get().getServer().equals(senderServer)) {
-                            player.sendMessage(mini.parse("Sending " + present.getUsername() + " to "
-                                    + targetServer.getServerInfo().getName()));
-                            present.sendMessage(
-                                    mini.parse("&aYou have been moved to &b" + targetServer.getServerInfo().getName()));
-                            present.createConnectionRequest(targetServer).fireAndForget();
-                        }
-
-                    });
-
-                }
-                count++;
+                if (proxy.getServer().getServer(arg).isPresent())
+                    servers.add(arg);
             }
+            var senderServer = player.getCurrentServer().get().getServerInfo().getName();
+            // Teams online in other proxies are planned and moved along with ours.
+            proxy.getClusterSpread().start(player, senderServer, servers);
         }
 
     }
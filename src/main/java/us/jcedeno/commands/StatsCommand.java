@@ -0,0 +1,52 @@
+package us.jcedeno.commands;
+
+import com.velocitypowered.api.command.SimpleCommand;
+
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import us.jcedeno.DedsafioProxy;
+
+/**
+ * Shows the sync, redis and join metrics of this proxy.
+ */
+public class StatsCommand implements SimpleCommand {
+
+    private final DedsafioProxy proxy;
+    private static MiniMessage mini = MiniMessage.get();
+
+    public StatsCommand(DedsafioProxy proxy) {
+        this.proxy = proxy;
+    }
+
+    @Override
+    public void execute(Invocation invocation) {
+        var src = invocation.source();
+        var teamManager = proxy.getTeamManager();
+        var metrics = teamManager.getMetrics();
+
+        src.sendMessage(mini.parse("<gold>Node " + teamManager.getMembership().getName() + ", "
+                + teamManager.getMembership().getAliveNodes().size() + " nodes alive"));
+        src.sendMessage(mini.parse("<yellow>Sync queue: <white>" + metrics.getSyncQueueDepth()
+                + " <yellow>Apply lag ms: <white>" + metrics.getApplyLag()));
+        src.sendMessage(mini.parse("<yellow>Events: <white>" + metrics.getEventCounts()
+                + " <yellow>Self dropped: <white>" + metrics.getSelfMessagesDropped()
+                + " <yellow>Malformed: <white>" + metrics.getMalformedMessagesDropped()));
+        src.sendMessage(mini.parse("<yellow>Dataset loads ms: <white>" + metrics.getDatasetLoadTimes()));
+        src.sendMessage(mini.parse("<yellow>Redis commands (us):"));
+        metrics.getRedisCommands()
+                .forEach((command, latency) -> src.sendMessage(mini.parse("  <white>" + command + " " + latency)));
+        var joins = proxy.getJoinPipeline();
+        src.sendMessage(mini.parse("<yellow>Joins queued: <white>" + joins.getQueueDepth()
+                + " <yellow>processed: <white>" + joins.getProcessed() + " <yellow>latency ms: <white>"
+                + Math.round(joins.getAverageLatencyMillis()) + " avg, " + joins.getMaxLatencyMillis() + " max"));
+        var transfers = proxy.getTransferScheduler();
+        src.sendMessage(mini.parse("<yellow>Transfers queued: <white>" + transfers.getQueued()
+                + " <yellow>in flight: <white>" + transfers.getInFlight()));
+
+    }
+
+    @Override
+    public boolean hasPermission(Invocation invocation) {
+        return invocation.source().hasPermission("desafiocommand.admin");
+    }
+
+}
@@ -0,0 +1,208 @@
+package us.jcedeno.join;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Runs the per-join work of the players that just connected, in batches.
+ * <p>
+ * Joins are queued as they happen and a single periodic drainer runs every
+ * step for the ones that have waited at least {@link #getDelayMillis()}, at
+ * most {@link #getBatchSize()} per tick. A login storm costs one scheduled task
+ * instead of one per player, and the rest of the joins just wait for the next
+ * tick.
+ * 
+ * @author jcedeno
+ */
+public class JoinPipeline {
+    private final ProxyServer proxy;
+    private final Object plugin;
+    private final ConcurrentLinkedQueue<PendingJoin> queue = new ConcurrentLinkedQueue<>();
+    private final List<Step> steps = new CopyOnWriteArrayList<>();
+    private final Logger logger = Logger.getLogger("joins");
+    /** Held by the running drain, ticks that overlap it are skipped. */
+    private final ReentrantLock draining = new ReentrantLock();
+    /** How long a join waits before its steps run, so the client is ready. */
+    private @Getter @Setter long delayMillis = 3000;
+    /** The max amount of joins processed per tick. */
+    private @Getter @Setter int batchSize = 200;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+    private ScheduledTask drainer;
+
+    /**
+     * @param proxy  The proxy server instance.
+     * @param plugin The plugin instance, owner of the drainer task.
+     */
+    public JoinPipeline(ProxyServer proxy, Object plugin) {
+        this.proxy = proxy;
+        this.plugin = plugin;
+    }
+
+    /**
+     * Adds a step to run for every join, after the ones already added.
+     * 
+     * @param name   The name of the step, used when it fails.
+     * @param action The work to do for the player.
+     */
+    public void addStep(String name, Consumer<Player> action) {
+        steps.add(new Step(name, action));
+    }
+
+    /**
+     * Starts draining the queue every period.
+     * 
+     * @param period How often to drain.
+     * @param unit   The unit of the period.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (drainer != null)
+            drainer.cancel();
+        drainer = proxy.getScheduler().buildTask(plugin, this::drain).repeat(period, unit).schedule();
+    }
+
+    /**
+     * Queues a join.
+     * 
+     * @param player The player that joined.
+     */
+    public void enqueue(Player player) {
+        queue.add(new PendingJoin(player, System.currentTimeMillis()));
+        peakQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * Runs every step for the joins that are due, up to a batch. Velocity runs
+     * every tick on its own thread, so a tick that comes while the previous one
+     * is still draining does nothing.
+     */
+    void drain() {
+        if (!draining.tryLock())
+            return;
+        try {
+            drainBatch();
+        } finally {
+            draining.unlock();
+        }
+    }
+
+    private void drainBatch() {
+        var now = System.currentTimeMillis();
+        var batch = new ArrayList<PendingJoin>();
+        // Joins are queued in order, so the first one that isn't due ends the batch. Only the drain removes
+        // joins, so the one polled is the one peeked.
+        PendingJoin next;
+        while (batch.size() < batchSize && (next = queue.peek()) != null && next.queuedAt + delayMillis <= now) {
+            queue.poll();
+            queueDepth.decrementAndGet();
+            batch.add(next);
+        }
+        for (var join : batch) {
+            // Nothing to do for players who left while waiting.
+            if (!join.player.isActive())
+                continue;
+            for (var step : steps) {
+                try {
+                    step.action.accept(join.player);
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Join step " + step.name + " failed for " + join.player.getUsername(),
+                            ex);
+                }
+            }
+            var latency = System.currentTimeMillis() - join.queuedAt;
+            processed.increment();
+            totalLatencyMillis.add(latency);
+            maxLatencyMillis.accumulateAndGet(latency, Math::max);
+        }
+        if (batch.size() == batchSize)
+            logger.fine("Processed a full batch of " + batchSize + " joins, " + queueDepth.get() + " still queued");
+    }
+
+    /**
+     * @return The amount of joins waiting to be processed.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return The highest queue depth observed since the pipeline started.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * @return The amount of joins processed.
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * @return The mean time between a join and its steps running, in millis.
+     */
+    public double getAverageLatencyMillis() {
+        var count = processed.sum();
+        return count == 0 ? 0 : (double) totalLatencyMillis.sum() / count;
+    }
+
+    /**
+     * @return The longest time between a join and its steps running, in millis.
+     */
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis.get();
+    }
+
+    /**
+     * Stops the drainer. Joins still queued are discarded.
+     */
+    public synchronized void stop() {
+        if (drainer != null)
+            drainer.cancel();
+        drainer = null;
+        queue.clear();
+        queueDepth.set(0);
+    }
+
+    private static class PendingJoin {
+        private final Player player;
+        private final long queuedAt;
+
+        PendingJoin(Player player, long queuedAt) {
+            this.player = player;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static class Step {
+        private final String name;
+        private final Consumer<Player> action;
+
+        Step(String name, Consumer<Player> action) {
+            this.name = name;
+            this.action = action;
+        }
+    }
+
+}
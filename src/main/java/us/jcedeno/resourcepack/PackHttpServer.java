@@ -0,0 +1,301 @@
+package us.jcedeno.resourcepack;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import lombok.Getter;
+
+/**
+ * A tiny HTTP/1.1 server that serves the resource pack from local disk, so
+ * joining players download it from the proxy instead of an outside host.
+ * <p>
+ * Only GET and HEAD of a single path are supported. The file is sent straight
+ * from the page cache to the socket with {@link FileChannel#transferTo}, and
+ * every response closes the connection. Responses carry an ETag, honour
+ * If-None-Match and single byte ranges, and at most a fixed amount of
+ * downloads run at once; the rest are told to retry later.
+ * 
+ * @author jcedeno
+ */
+public class PackHttpServer {
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+    private final InetSocketAddress bind;
+    private final @Getter String path;
+    private final Path file;
+    private final Supplier<String> etag;
+    private final Semaphore downloads;
+    private final ExecutorService workers;
+    private final Logger logger = Logger.getLogger("pack-http");
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+
+    /**
+     * @param bind         Where to listen.
+     * @param path         The path the pack is served at, like "/pack.zip".
+     * @param file         The pack.
+     * @param etag         Supplies the current entity tag of the pack, unquoted.
+     *                     May supply null if it isn't known.
+     * @param maxDownloads The max amount of downloads at once.
+     */
+    public PackHttpServer(InetSocketAddress bind, String path, Path file, Supplier<String> etag, int maxDownloads) {
+        this.bind = bind;
+        this.path = path;
+        this.file = file;
+        this.etag = etag;
+        this.downloads = new Semaphore(Math.max(1, maxDownloads));
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "pack-http-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts listening.
+     * 
+     * @throws IOException If the address couldn't be bound.
+     */
+    public synchronized void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(bind);
+        acceptor = new Thread(this::acceptLoop, "pack-http-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info("Serving " + file + " at " + getAddress() + path);
+    }
+
+    /**
+     * @return The address the server is listening on.
+     */
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return bind;
+        }
+    }
+
+    /**
+     * Stops listening. Downloads already running are left to finish.
+     */
+    public synchronized void stop() {
+        try {
+            if (serverChannel != null)
+                serverChannel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Couldn't close the pack server", e);
+        }
+        workers.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (serverChannel.isOpen()) {
+            SocketChannel client;
+            try {
+                client = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Couldn't accept a pack download", e);
+                continue;
+            }
+            if (!downloads.tryAcquire()) {
+                // Answered right here, it's a handful of bytes.
+                try (client) {
+                    writeHead(client, 503, "Service Unavailable", Map.of("Retry-After", "5", "Content-Length", "0"));
+                } catch (IOException ignored) {
+                }
+                continue;
+            }
+            workers.execute(() -> {
+                try (client) {
+                    handle(client);
+                } catch (SocketTimeoutException ignored) {
+                    // Clients that never finish their request.
+                } catch (IOException e) {
+                    logger.fine("Pack download ended early: " + e.getMessage());
+                } finally {
+                    downloads.release();
+                }
+            });
+        }
+    }
+
+    private void handle(SocketChannel client) throws IOException {
+        client.socket().setSoTimeout(READ_TIMEOUT_MILLIS);
+        var in = new BufferedInputStream(client.socket().getInputStream());
+        var requestLine = readLine(in);
+        if (requestLine == null)
+            return;
+        var headers = new HashMap<String, String>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            var colon = line.indexOf(':');
+            if (colon > 0)
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+
+        var parts = requestLine.split(" ");
+        if (parts.length != 3) {
+            writeHead(client, 400, "Bad Request", Map.of("Content-Length", "0"));
+            return;
+        }
+        var method = parts[0];
+        var head = method.equals("HEAD");
+        if (!head && !method.equals("GET")) {
+            writeHead(client, 405, "Method Not Allowed", Map.of("Allow", "GET, HEAD", "Content-Length", "0"));
+            return;
+        }
+        var target = parts[1];
+        var query = target.indexOf('?');
+        if (!(query >= 0 ? target.substring(0, query) : target).equals(path)) {
+            writeHead(client, 404, "Not Found", Map.of("Content-Length", "0"));
+            return;
+        }
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            var response = new HashMap<String, String>();
+            response.put("Content-Type", "application/zip");
+            response.put("Accept-Ranges", "bytes");
+            var tag = etag.get();
+            if (tag != null) {
+                response.put("ETag", "\"" + tag + "\"");
+                if (matches(headers.get("if-none-match"), tag)) {
+                    writeHead(client, 304, "Not Modified", response);
+                    return;
+                }
+            }
+
+            long start = 0;
+            long end = size - 1;
+            var range = headers.get("range");
+            // A range for another version of the pack is ignored, the whole pack is sent.
+            var ifRange = headers.get("if-range");
+            if (range != null && (ifRange == null || (tag != null && ifRange.equals("\"" + tag + "\"")))) {
+                var bounds = parseRange(range, size);
+                if (bounds == null) {
+                    response.put("Content-Range", "bytes */" + size);
+                    response.put("Content-Length", "0");
+                    writeHead(client, 416, "Range Not Satisfiable", response);
+                    return;
+                }
+                start = bounds[0];
+                end = bounds[1];
+                response.put("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+            var length = end - start + 1;
+            response.put("Content-Length", Long.toString(length));
+            if (response.containsKey("Content-Range"))
+                writeHead(client, 206, "Partial Content", response);
+            else
+                writeHead(client, 200, "OK", response);
+            if (head)
+                return;
+
+            var position = start;
+            while (position <= end) {
+                var sent = channel.transferTo(position, end - position + 1, client);
+                if (sent <= 0)
+                    throw new IOException("Client stopped reading");
+                position += sent;
+            }
+        }
+    }
+
+    /**
+     * @param header The value of an If-None-Match header, may be null.
+     * @param tag    The current entity tag, unquoted.
+     * @return Whether the header matches the tag.
+     */
+    static boolean matches(String header, String tag) {
+        if (header == null)
+            return false;
+        for (var candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals("\"" + tag + "\""))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param header The value of a Range header.
+     * @param size   The size of the file.
+     * @return The first and last byte requested, or null if the range can't be
+     *         satisfied. Only a single range is supported.
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0)
+            return null;
+        var spec = header.substring(6).trim();
+        var dash = spec.indexOf('-');
+        if (dash < 0)
+            return null;
+        try {
+            var from = spec.substring(0, dash).trim();
+            var to = spec.substring(dash + 1).trim();
+            if (from.isEmpty()) {
+                // The last n bytes.
+                var suffix = Long.parseLong(to);
+                if (suffix <= 0 || size == 0)
+                    return null;
+                return new long[] { Math.max(0, size - suffix), size - 1 };
+            }
+            var start = Long.parseLong(from);
+            var end = to.isEmpty() ? size - 1 : Math.min(Long.parseLong(to), size - 1);
+            if (start >= size || start > end)
+                return null;
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var builder = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n')
+                return builder.toString();
+            if (c != '\r')
+                builder.append((char) c);
+            if (builder.length() > MAX_HEADER_BYTES)
+                throw new IOException("Header line too long");
+        }
+        return builder.length() > 0 ? builder.toString() : null;
+    }
+
+    private static void writeHead(SocketChannel client, int status, String reason, Map<String, String> headers)
+            throws IOException {
+        var head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        headers.forEach((key, value) -> head.append(key).append(": ").append(value).append("\r\n"));
+        head.append("Connection: close\r\n\r\n");
+        var buffer = ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        while (buffer.hasRemaining())
+            client.write(buffer);
+    }
+
+}
@@ -0,0 +1,214 @@
+package us.jcedeno.resourcepack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.player.ResourcePackInfo;
+
+import lombok.Getter;
+
+/**
+ * The resource pack offered to every player, built once and reused for every
+ * offer.
+ * <p>
+ * The offer carries the SHA-1 of the pack so clients can use the copy they
+ * already have instead of downloading it again. The hash is computed from a
+ * local copy of the pack when there is one, or by downloading the pack once
+ * otherwise. A local copy can also be watched to rehash it when it changes.
+ * 
+ * @author jcedeno
+ */
+public class ResourcePack {
+    private final ProxyServer server;
+    private final @Getter String url;
+    /** Local copy of the pack, null if there is none. */
+    private final Path file;
+    private final Logger logger = Logger.getLogger("resourcepack");
+    private volatile ResourcePackInfo info;
+    private volatile byte[] hash;
+    private volatile long fileModified = -1;
+
+    /**
+     * @param server The proxy.
+     * @param url    The url clients download the pack from.
+     * @param file   A local copy of the pack, or null to hash the url.
+     */
+    public ResourcePack(ProxyServer server, String url, Path file) {
+        this.server = server;
+        this.url = url;
+        this.file = file;
+        // Players can get the pack without a hash until the first one is ready.
+        this.info = build(null);
+    }
+
+    /**
+     * @return The offer sent to players.
+     */
+    public ResourcePackInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * @return The hex SHA-1 of the pack, or null if it isn't known yet.
+     */
+    public String getHashHex() {
+        var current = hash;
+        return current != null ? toHex(current) : null;
+    }
+
+    /**
+     * Offers the pack to a player.
+     * 
+     * @param player The player.
+     */
+    public void offer(Player player) {
+        player.sendResourcePackOffer(info);
+    }
+
+    /**
+     * Sets a known hash, skipping the computation.
+     * 
+     * @param sha1 The SHA-1 of the pack.
+     */
+    public void setHash(byte[] sha1) {
+        if (sha1 == null || sha1.length != 20)
+            throw new IllegalArgumentException("A SHA-1 hash has 20 bytes.");
+        this.hash = sha1.clone();
+        this.info = build(hash);
+    }
+
+    /**
+     * Computes the hash of the pack in another thread and rebuilds the offer
+     * with it.
+     * 
+     * @return A future with the new hash.
+     */
+    public CompletableFuture<byte[]> rehash() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (file != null) {
+                    var modified = Files.getLastModifiedTime(file).toMillis();
+                    try (var in = Files.newInputStream(file)) {
+                        var sha1 = sha1(in);
+                        this.fileModified = modified;
+                        return sha1;
+                    }
+                }
+                var client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL)
+                        .connectTimeout(Duration.ofSeconds(10)).build();
+                var response = client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                        HttpResponse.BodyHandlers.ofInputStream());
+                if (response.statusCode() != 200)
+                    throw new IOException("Got status " + response.statusCode() + " downloading " + url);
+                try (var in = response.body()) {
+                    return sha1(in);
+                }
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }).whenComplete((sha1, ex) -> {
+            if (ex != null) {
+                logger.log(Level.WARNING, "Couldn't hash the resource pack, offering it without a hash", ex);
+                return;
+            }
+            setHash(sha1);
+            logger.info("Resource pack hash is " + toHex(sha1));
+        });
+    }
+
+    /**
+     * Checks the local copy of the pack every period and rehashes it when it
+     * changes. Does nothing if there is no local copy.
+     * 
+     * @param plugin The plugin to schedule the task with.
+     * @param period How often to check.
+     * @param unit   The unit of the period.
+     */
+    public void watch(Object plugin, long period, TimeUnit unit) {
+        if (file == null)
+            return;
+        server.getScheduler().buildTask(plugin, () -> {
+            try {
+                if (Files.getLastModifiedTime(file).toMillis() != fileModified)
+                    rehash();
+            } catch (IOException e) {
+                logger.warning("Couldn't check the resource pack file: " + e.getMessage());
+            }
+        }).delay(period, unit).repeat(period, unit).schedule();
+    }
+
+    private ResourcePackInfo build(byte[] sha1) {
+        var builder = server.createResourcePackBuilder(url).setShouldForce(false);
+        if (sha1 != null)
+            builder.setHash(sha1);
+        return builder.build();
+    }
+
+    /**
+     * @param in The stream to read until its end.
+     * @return The SHA-1 of everything in the stream.
+     * @throws IOException If the stream couldn't be read.
+     */
+    public static byte[] sha1(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM ships SHA-1", e);
+        }
+        var buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            digest.update(buffer, 0, read);
+        return digest.digest();
+    }
+
+    /**
+     * @param bytes Some bytes.
+     * @return The bytes as lowercase hex.
+     */
+    public static String toHex(byte[] bytes) {
+        var builder = new StringBuilder(bytes.length * 2);
+        for (var b : bytes)
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return builder.toString();
+    }
+
+    /**
+     * @param hex Some hex, like the output of {@link #toHex(byte[])}.
+     * @return The bytes it represents.
+     */
+    public static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0)
+            throw new IllegalArgumentException("Odd amount of hex digits: " + hex);
+        var bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            var high = Character.digit(hex.charAt(i * 2), 16);
+            var low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0)
+                throw new IllegalArgumentException("Not hex: " + hex);
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+}
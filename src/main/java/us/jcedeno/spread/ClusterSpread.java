@@ -0,0 +1,314 @@
+package us.jcedeno.spread;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.velocitypowered.api.proxy.ProxyServer;
+
+import lombok.Getter;
+import lombok.Setter;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import us.jcedeno.teams.velocity.VTeamManager;
+
+/**
+ * Spreads the teams online in every proxy with a single plan, so teams whose
+ * members are connected to different proxies still end up together.
+ * <p>
+ * The node that starts the spread asks every proxy how many members of each
+ * team it has in the source server and how loaded the targets are from its
+ * side. Once every live node answered, or after {@link #getCensusMillis()}
+ * at most, it places the teams with the {@link PlacementEngine} using the
+ * totals and publishes the plan, along with the proxies it counted. Each of
+ * those then moves its own players with the {@link TransferScheduler} and
+ * reports back how it went, proxies that answered late are left out. All
+ * messages travel over the sync pipeline.
+ * 
+ * @author jcedeno
+ */
+public class ClusterSpread {
+    /** Topic of the cluster messages of this subsystem. */
+    public static final String TOPIC = "spread";
+    private static final Gson gson = new Gson();
+    private static MiniMessage mini = MiniMessage.get();
+    private final ProxyServer proxy;
+    private final Object plugin;
+    private final VTeamManager teamManager;
+    private final PlacementEngine placementEngine;
+    private final TransferScheduler transferScheduler;
+    private final UUID nodeId;
+    /** Spreads started by this node that haven't finished yet. */
+    private final Map<UUID, Coordination> coordinating = new ConcurrentHashMap<>();
+    private final Logger logger = Logger.getLogger("cluster-spread");
+    /** How long to wait for the other proxies to report their players. */
+    private @Getter @Setter long censusMillis = 1000;
+    /** How long to wait for the other proxies to finish their moves. */
+    private @Getter @Setter long completionTimeoutMillis = TimeUnit.MINUTES.toMillis(2);
+
+    public ClusterSpread(ProxyServer proxy, Object plugin, VTeamManager teamManager, PlacementEngine placementEngine,
+            TransferScheduler transferScheduler) {
+        this.proxy = proxy;
+        this.plugin = plugin;
+        this.teamManager = teamManager;
+        this.placementEngine = placementEngine;
+        this.transferScheduler = transferScheduler;
+        this.nodeId = teamManager.getNodeId();
+        teamManager.getSyncPipeline().registerClusterHandler(TOPIC, this::onMessage);
+    }
+
+    /**
+     * Starts a spread of the teams in the source server, across every proxy.
+     * 
+     * @param requester Who to report the progress to.
+     * @param source    The name of the server the teams are moved from.
+     * @param targets   The names of the servers to move them to.
+     */
+    public void start(Audience requester, String source, List<String> targets) {
+        var request = new Message(Kind.CENSUS_REQUEST, UUID.randomUUID());
+        request.source = source;
+        request.targets = targets;
+        var coordination = new Coordination(requester, request);
+        coordinating.put(request.spreadId, coordination);
+        coordination.census(nodeId, census(request));
+        publish(request);
+        proxy.getScheduler().buildTask(plugin, () -> plan(coordination)).delay(censusMillis, TimeUnit.MILLISECONDS)
+                .schedule();
+    }
+
+    private void onMessage(UUID from, byte[] body) {
+        Message message;
+        try {
+            message = gson.fromJson(new String(body, StandardCharsets.UTF_8), Message.class);
+        } catch (JsonParseException ex) {
+            logger.warning("Malformed spread message from " + from + ": " + ex.getMessage());
+            return;
+        }
+        if (message == null || message.kind == null)
+            return;
+        switch (message.kind) {
+            case CENSUS_REQUEST -> publish(census(message));
+            case CENSUS -> {
+                var coordination = coordinating.get(message.spreadId);
+                if (coordination != null)
+                    coordination.census(from, message);
+            }
+            case PLAN -> execute(message);
+            case DONE -> {
+                var coordination = coordinating.get(message.spreadId);
+                if (coordination != null)
+                    coordination.done(from, message);
+            }
+        }
+    }
+
+    /**
+     * @param request The census request.
+     * @return How many members of each team this proxy has in the source server,
+     *         and how many players it has in every target.
+     */
+    private Message census(Message request) {
+        var census = new Message(Kind.CENSUS, request.spreadId);
+        census.teams = new HashMap<>();
+        census.load = new HashMap<>();
+        var source = proxy.getServer(request.source).orElse(null);
+        if (source != null) {
+            for (var team : teamManager.getTeamsOnlineList()) {
+                var group = SpreadGroup.of(team, proxy, source);
+                if (group.size() > 0)
+                    census.teams.put(team.getTeamID().toString(), group.size());
+            }
+        }
+        for (var target : request.targets) {
+            proxy.getServer(target).ifPresent(server -> {
+                var load = server.getPlayersConnected().size();
+                // Whoever is in the source is being placed, not load.
+                if (target.equals(request.source))
+                    load -= census.teams.values().stream().mapToInt(Integer::intValue).sum();
+                census.load.put(target, load);
+            });
+        }
+        return census;
+    }
+
+    private void plan(Coordination coordination) {
+        var request = coordination.request;
+        var sizes = new HashMap<String, Integer>();
+        var load = new int[request.targets.size()];
+        var capacity = new int[request.targets.size()];
+        var plan = new Message(Kind.PLAN, request.spreadId);
+        synchronized (coordination) {
+            // Planned already, as soon as every live node answered.
+            if (coordination.planned)
+                return;
+            coordination.planned = true;
+            plan.nodes = new ArrayList<>(coordination.censuses.keySet());
+            for (var census : coordination.censuses.values()) {
+                census.teams.forEach((team, size) -> sizes.merge(team, size, Integer::sum));
+                for (int i = 0; i < load.length; i++)
+                    load[i] += census.load.getOrDefault(request.targets.get(i), 0);
+            }
+        }
+        for (int i = 0; i < capacity.length; i++)
+            capacity[i] = placementEngine.getCapacity(request.targets.get(i));
+        var teamIds = new ArrayList<>(sizes.keySet());
+        var groupSizes = teamIds.stream().mapToInt(sizes::get).toArray();
+        var assigned = PlacementEngine.assign(groupSizes, load, capacity);
+
+        plan.source = request.source;
+        plan.placement = new HashMap<>();
+        var players = 0;
+        var unplaced = 0;
+        for (int i = 0; i < assigned.length; i++) {
+            if (assigned[i] < 0) {
+                unplaced++;
+            } else {
+                plan.placement.put(teamIds.get(i), request.targets.get(assigned[i]));
+                players += groupSizes[i];
+            }
+        }
+        coordination.requester.sendMessage(mini.parse("&aSpreading " + plan.placement.size() + " teams (" + players
+                + " players, " + plan.nodes.size() + " proxies) into &b" + request.targets.size()
+                + " &aservers"));
+        if (unplaced > 0)
+            coordination.requester.sendMessage(mini.parse("<red>" + unplaced + " teams didn't fit in any server"));
+        publish(plan);
+        execute(plan);
+        proxy.getScheduler().buildTask(plugin, () -> coordination.finish(true))
+                .delay(completionTimeoutMillis, TimeUnit.MILLISECONDS).schedule();
+    }
+
+    /**
+     * Moves the players of this proxy as the plan says, unless the plan was made
+     * without counting them.
+     * 
+     * @param plan The plan.
+     */
+    private void execute(Message plan) {
+        // Their players would go over the capacity the plan assumed.
+        if (plan.nodes != null && !plan.nodes.contains(nodeId)) {
+            logger.info("Sitting out spread " + plan.spreadId + ", this proxy's census came too late");
+            return;
+        }
+        var source = proxy.getServer(plan.source).orElse(null);
+        var moves = new ArrayList<PlacementPlan.Move>();
+        if (source != null) {
+            var teams = teamManager.getTeamsMap();
+            plan.placement.forEach((teamId, targetName) -> {
+                var team = teams.get(UUID.fromString(teamId));
+                var target = proxy.getServer(targetName).orElse(null);
+                if (team == null || target == null)
+                    return;
+                var group = SpreadGroup.of(team, proxy, source);
+                for (var member : group.getMembers()) {
+                    member.sendMessage(mini.parse("&aYou have been moved to &b" + targetName));
+                    moves.add(new PlacementPlan.Move(member, target, group));
+                }
+            });
+        }
+        transferScheduler.submit(moves).completion().thenAccept(batch -> {
+            var done = new Message(Kind.DONE, plan.spreadId);
+            done.succeeded = batch.getSucceeded();
+            done.failed = batch.getFailed();
+            var coordination = coordinating.get(plan.spreadId);
+            if (coordination != null)
+                coordination.done(nodeId, done);
+            else
+                publish(done);
+        });
+    }
+
+    private void publish(Message message) {
+        teamManager.getSyncPipeline().communicateClusterMessageAsync(TOPIC,
+                gson.toJson(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private enum Kind {
+        CENSUS_REQUEST, CENSUS, PLAN, DONE;
+    }
+
+    /**
+     * Every message of the protocol, only the fields of its kind are set.
+     */
+    private static class Message {
+        private Kind kind;
+        private UUID spreadId;
+        private String source;
+        private List<String> targets;
+        /** Online members in the source server, by team id. */
+        private Map<String, Integer> teams;
+        /** Players in every target, by server name. */
+        private Map<String, Integer> load;
+        /** Server of every team, by team id. */
+        private Map<String, String> placement;
+        /** The proxies counted in the plan, the only ones that move players. */
+        private List<UUID> nodes;
+        private int succeeded;
+        private int failed;
+
+        Message(Kind kind, UUID spreadId) {
+            this.kind = kind;
+            this.spreadId = spreadId;
+        }
+    }
+
+    /**
+     * A spread started by this node.
+     */
+    private class Coordination {
+        private final Audience requester;
+        private final Message request;
+        private final Map<UUID, Message> censuses = new HashMap<>();
+        private final Set<UUID> pending = new HashSet<>();
+        private boolean planned;
+        private int succeeded;
+        private int failed;
+
+        Coordination(Audience requester, Message request) {
+            this.requester = requester;
+            this.request = request;
+        }
+
+        synchronized void census(UUID node, Message census) {
+            // Late proxies are left out of the plan, they don't move their players either.
+            if (planned)
+                return;
+            censuses.put(node, census);
+            pending.add(node);
+            // No need to wait out the window once every live node answered.
+            var membership = teamManager.getMembership();
+            if (membership.isRunning() && membership.getAliveNodes().stream()
+                    .allMatch(alive -> censuses.containsKey(alive.getNodeId())))
+                proxy.getScheduler().buildTask(plugin, () -> plan(this)).schedule();
+        }
+
+        synchronized void done(UUID node, Message done) {
+            if (!pending.remove(node))
+                return;
+            succeeded += done.succeeded;
+            failed += done.failed;
+            if (pending.isEmpty())
+                finish(false);
+        }
+
+        synchronized void finish(boolean timedOut) {
+            if (coordinating.remove(request.spreadId) == null)
+                return;
+            var summary = "Spread finished: " + succeeded + " players moved, " + failed + " failed";
+            if (timedOut)
+                summary += ", " + pending.size() + " proxies didn't report back";
+            requester.sendMessage(mini.parse((failed > 0 || timedOut ? "<red>" : "<green>") + summary));
+        }
+    }
+
+}
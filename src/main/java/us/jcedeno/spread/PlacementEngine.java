@@ -0,0 +1,150 @@
+package us.jcedeno.spread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Places groups of players in servers without splitting any group and without
+ * going over the capacity of any server. Groups are placed biggest first, each
+ * one in the server that ends up the least full relative to its capacity, which
+ * keeps the servers balanced even when group sizes are uneven. The whole plan is
+ * made before anybody is moved.
+ * 
+ * @author jcedeno
+ */
+public class PlacementEngine {
+    /** Capacity of the servers without one of their own. */
+    private @Getter @Setter int defaultCapacity;
+    /** Capacity of specific servers, by name. */
+    private final Map<String, Integer> capacities = new HashMap<>();
+
+    /**
+     * @param defaultCapacity Capacity of the servers without one of their own.
+     */
+    public PlacementEngine(int defaultCapacity) {
+        this.defaultCapacity = defaultCapacity;
+    }
+
+    /**
+     * @param server   The name of a server.
+     * @param capacity The max amount of players it should hold.
+     */
+    public void setCapacity(String server, int capacity) {
+        capacities.put(server, capacity);
+    }
+
+    /**
+     * @param server A server.
+     * @return The max amount of players it should hold.
+     */
+    public int getCapacity(RegisteredServer server) {
+        return getCapacity(server.getServerInfo().getName());
+    }
+
+    /**
+     * @param server The name of a server.
+     * @return The max amount of players it should hold.
+     */
+    public int getCapacity(String server) {
+        return capacities.getOrDefault(server, defaultCapacity);
+    }
+
+    /**
+     * Plans where every group goes. The players of the groups are not counted as
+     * load of the server they currently are in, since they are being placed.
+     * 
+     * @param groups  The groups to place.
+     * @param targets The servers to place them in.
+     * @return The plan.
+     */
+    public PlacementPlan plan(Collection<SpreadGroup> groups, Collection<RegisteredServer> targets) {
+        var plan = new PlacementPlan();
+        var servers = new ArrayList<>(targets);
+        var load = new int[servers.size()];
+        var capacity = new int[servers.size()];
+        for (int i = 0; i < servers.size(); i++) {
+            load[i] = servers.get(i).getPlayersConnected().size();
+            capacity[i] = getCapacity(servers.get(i));
+        }
+        // Whoever is being placed doesn't count as load where they are now.
+        for (var group : groups) {
+            for (var member : group.getMembers()) {
+                for (int i = 0; i < servers.size(); i++) {
+                    if (SpreadGroup.isIn(member, servers.get(i)))
+                        load[i]--;
+                }
+            }
+        }
+        for (int i = 0; i < servers.size(); i++)
+            plan.projectLoad(servers.get(i), load[i]);
+
+        List<SpreadGroup> sorted = new ArrayList<>(groups);
+        var sizes = new int[sorted.size()];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = sorted.get(i).size();
+        var assigned = assign(sizes, load, capacity);
+        for (int i = 0; i < assigned.length; i++) {
+            var group = sorted.get(i);
+            if (group.size() == 0)
+                continue;
+            if (assigned[i] < 0)
+                plan.reject(group);
+            else
+                plan.assign(group, servers.get(assigned[i]), load[assigned[i]]);
+        }
+        return plan;
+    }
+
+    /**
+     * The placement itself, on plain numbers so groups and servers that aren't in
+     * this proxy can be placed too.
+     * 
+     * @param sizes    The size of every group.
+     * @param load     The current load of every server. Updated with the groups
+     *                 placed.
+     * @param capacity The capacity of every server.
+     * @return The index of the server every group goes to, -1 if it fits in none.
+     */
+    public static int[] assign(int[] sizes, int[] load, int[] capacity) {
+        var assigned = new int[sizes.length];
+        Arrays.fill(assigned, -1);
+        var order = new Integer[sizes.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        // Biggest groups first, they are the hardest to fit.
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> sizes[i]).reversed());
+        for (var group : order) {
+            if (sizes[group] == 0)
+                continue;
+            var best = -1;
+            var bestFill = Double.MAX_VALUE;
+            for (int i = 0; i < load.length; i++) {
+                var after = load[i] + sizes[group];
+                if (after > capacity[i])
+                    continue;
+                var fill = capacity[i] > 0 ? (double) after / capacity[i] : Double.MAX_VALUE;
+                // Ties go to the emptier server, then to the first one given.
+                if (fill < bestFill || (best >= 0 && fill == bestFill && load[i] < load[best])) {
+                    best = i;
+                    bestFill = fill;
+                }
+            }
+            if (best < 0)
+                continue;
+            load[best] += sizes[group];
+            assigned[group] = best;
+        }
+        return assigned;
+    }
+
+}
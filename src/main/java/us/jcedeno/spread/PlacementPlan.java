@@ -0,0 +1,90 @@
+package us.jcedeno.spread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import lombok.Getter;
+
+/**
+ * The result of a {@link PlacementEngine} run: which server every group goes
+ * to, the connection requests needed to get them there and the groups that
+ * didn't fit anywhere.
+ * 
+ * @author jcedeno
+ */
+public class PlacementPlan {
+    private final Map<RegisteredServer, List<SpreadGroup>> assignments = new LinkedHashMap<>();
+    private final Map<RegisteredServer, Integer> projectedLoad = new LinkedHashMap<>();
+    private final List<Move> moves = new ArrayList<>();
+    private final List<SpreadGroup> unplaced = new ArrayList<>();
+
+    void assign(SpreadGroup group, RegisteredServer target, int load) {
+        assignments.computeIfAbsent(target, server -> new ArrayList<>()).add(group);
+        projectedLoad.put(target, load);
+        for (var member : group.getMembers()) {
+            // Members already there don't need to go anywhere.
+            if (!SpreadGroup.isIn(member, target))
+                moves.add(new Move(member, target, group));
+        }
+    }
+
+    void projectLoad(RegisteredServer target, int load) {
+        projectedLoad.put(target, load);
+    }
+
+    void reject(SpreadGroup group) {
+        unplaced.add(group);
+    }
+
+    /**
+     * @return The groups assigned to every target.
+     */
+    public Map<RegisteredServer, List<SpreadGroup>> getAssignments() {
+        return Collections.unmodifiableMap(assignments);
+    }
+
+    /**
+     * @return The amount of players every target will have once the plan is
+     *         carried out.
+     */
+    public Map<RegisteredServer, Integer> getProjectedLoad() {
+        return Collections.unmodifiableMap(projectedLoad);
+    }
+
+    /**
+     * @return The connection requests needed to carry out the plan, grouped by
+     *         group.
+     */
+    public List<Move> getMoves() {
+        return Collections.unmodifiableList(moves);
+    }
+
+    /**
+     * @return The groups that didn't fit in any target.
+     */
+    public List<SpreadGroup> getUnplaced() {
+        return Collections.unmodifiableList(unplaced);
+    }
+
+    /**
+     * A player that has to be sent to a server.
+     */
+    public static class Move {
+        private final @Getter Player player;
+        private final @Getter RegisteredServer target;
+        private final @Getter SpreadGroup group;
+
+        Move(Player player, RegisteredServer target, SpreadGroup group) {
+            this.player = player;
+            this.target = target;
+            this.group = group;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package us.jcedeno.spread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import lombok.Getter;
+import us.jcedeno.teams.objects.Team;
+
+/**
+ * Players that must end up in the same server, like the online members of a
+ * team or a single player.
+ * 
+ * @author jcedeno
+ */
+public class SpreadGroup {
+    private final @Getter String name;
+    private final @Getter List<Player> members;
+
+    public SpreadGroup(String name, List<Player> members) {
+        this.name = name;
+        this.members = members;
+    }
+
+    /**
+     * @return The amount of players in the group.
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * @param player A player.
+     * @return A group with just the player.
+     */
+    public static SpreadGroup of(Player player) {
+        return new SpreadGroup(player.getUsername(), List.of(player));
+    }
+
+    /**
+     * @param team   A team.
+     * @param proxy  The proxy server instance.
+     * @param source The server the members must be in to be moved, null for any.
+     * @return A group with the members of the team that are online, and in the
+     *         source server if given.
+     */
+    public static SpreadGroup of(Team team, ProxyServer proxy, RegisteredServer source) {
+        var members = new ArrayList<Player>();
+        if (team.getMembers() != null) {
+            for (var member : team.getMembers()) {
+                proxy.getPlayer(member).ifPresent(player -> {
+                    if (source == null || isIn(player, source))
+                        members.add(player);
+                });
+            }
+        }
+        return new SpreadGroup(team.getTeamName() != null ? team.getTeamName() : team.getTeamID().toString(),
+                members);
+    }
+
+    /**
+     * @param players Some players.
+     * @return A group for each of the players.
+     */
+    public static List<SpreadGroup> ofEach(Collection<Player> players) {
+        var groups = new ArrayList<SpreadGroup>(players.size());
+        for (var player : players)
+            groups.add(of(player));
+        return groups;
+    }
+
+    static boolean isIn(Player player, RegisteredServer server) {
+        var current = player.getCurrentServer();
+        return current.isPresent() && current.get().getServer().equals(server);
+    }
+
+}
@@ -0,0 +1,116 @@
+package us.jcedeno.spread;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Progress of a set of transfers submitted together to a
+ * {@link TransferScheduler}.
+ * 
+ * @author jcedeno
+ */
+public class TransferBatch {
+    private final int total;
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger retries = new AtomicInteger();
+    private final List<String> failures = new CopyOnWriteArrayList<>();
+    private final List<Consumer<TransferBatch>> progressListeners = new CopyOnWriteArrayList<>();
+    private final CompletableFuture<TransferBatch> completion = new CompletableFuture<>();
+    private final long startedAt = System.currentTimeMillis();
+
+    TransferBatch(int total) {
+        this.total = total;
+        if (total == 0)
+            completion.complete(this);
+    }
+
+    /**
+     * @param listener Called every time a transfer of the batch finishes, for
+     *                 good or bad.
+     * @return This batch.
+     */
+    public TransferBatch onProgress(Consumer<TransferBatch> listener) {
+        progressListeners.add(listener);
+        return this;
+    }
+
+    /**
+     * @return A future completed with this batch once every transfer finished.
+     */
+    public CompletableFuture<TransferBatch> completion() {
+        return completion;
+    }
+
+    void succeeded() {
+        succeeded.incrementAndGet();
+        finished();
+    }
+
+    void failed(String reason) {
+        failures.add(reason);
+        failed.incrementAndGet();
+        finished();
+    }
+
+    void retried() {
+        retries.incrementAndGet();
+    }
+
+    private void finished() {
+        for (var listener : progressListeners)
+            listener.accept(this);
+        if (getDone() == total)
+            completion.complete(this);
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return The amount of retried attempts so far.
+     */
+    public int getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return The amount of transfers that finished, for good or bad.
+     */
+    public int getDone() {
+        return succeeded.get() + failed.get();
+    }
+
+    /**
+     * @return Why every failed transfer failed.
+     */
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return Milliseconds since the batch was submitted.
+     */
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - startedAt;
+    }
+
+    @Override
+    public String toString() {
+        return getDone() + "/" + total + " transfers done (" + getSucceeded() + " ok, " + getFailed() + " failed, "
+                + getRetries() + " retries) in " + getElapsedMillis() + "ms";
+    }
+
+}
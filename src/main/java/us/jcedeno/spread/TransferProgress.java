@@ -0,0 +1,35 @@
+package us.jcedeno.spread;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+
+/**
+ * Reports the progress of a {@link TransferBatch} to whoever started it, every
+ * quarter and once it's done.
+ * 
+ * @author jcedeno
+ */
+public final class TransferProgress {
+    private static MiniMessage mini = MiniMessage.get();
+
+    private TransferProgress() {
+    }
+
+    /**
+     * @param audience Who to report to.
+     * @param batch    The batch to report.
+     */
+    public static void reportTo(Audience audience, TransferBatch batch) {
+        var lastQuarter = new AtomicInteger();
+        batch.onProgress(progress -> {
+            var quarter = progress.getDone() * 4 / Math.max(1, progress.getTotal());
+            if (quarter < 4 && quarter > lastQuarter.getAndAccumulate(quarter, Math::max))
+                audience.sendMessage(mini.parse("&7" + progress));
+        });
+        batch.completion().thenAccept(done -> audience.sendMessage(
+                mini.parse((done.getFailed() > 0 ? "<red>" : "<green>") + "Transfers finished: " + done)));
+    }
+
+}
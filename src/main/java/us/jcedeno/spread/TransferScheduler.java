@@ -0,0 +1,215 @@
+package us.jcedeno.spread;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Sends players to servers in paced waves instead of all at once. Every target
+ * server has its own lane, which never has more than
+ * {@link #getMaxConcurrentPerTarget()} connections in flight and never starts
+ * more than {@link #getRatePerTarget()} per second. Connections are tracked
+ * through their futures, and the ones that fail for a reason that may go away
+ * are retried with a growing delay.
+ * 
+ * @author jcedeno
+ */
+public class TransferScheduler {
+    /** How often the lanes are checked for transfers to start. */
+    private static final long TICK_MILLIS = 50;
+    private final ProxyServer proxy;
+    private final Object plugin;
+    private final Map<RegisteredServer, Lane> lanes = new ConcurrentHashMap<>();
+    private final Logger logger = Logger.getLogger("transfers");
+    private @Getter @Setter int maxConcurrentPerTarget = 10;
+    private @Getter @Setter double ratePerTarget = 20;
+    private @Getter @Setter int maxAttempts = 3;
+    private @Getter @Setter long retryDelayMillis = 1000;
+    private ScheduledTask ticker;
+
+    /**
+     * @param proxy  The proxy server instance.
+     * @param plugin The plugin instance, owner of the scheduled tasks.
+     */
+    public TransferScheduler(ProxyServer proxy, Object plugin) {
+        this.proxy = proxy;
+        this.plugin = plugin;
+    }
+
+    /**
+     * Queues the moves of a plan.
+     * 
+     * @param moves The moves to carry out.
+     * @return The progress of the moves.
+     */
+    public TransferBatch submit(Collection<PlacementPlan.Move> moves) {
+        var batch = new TransferBatch(moves.size());
+        for (var move : moves)
+            enqueue(new Transfer(move.getPlayer(), move.getTarget(), batch));
+        return batch;
+    }
+
+    /**
+     * Queues a single move.
+     * 
+     * @param player The player to send.
+     * @param target The server to send them to.
+     * @return The progress of the move.
+     */
+    public TransferBatch submit(Player player, RegisteredServer target) {
+        var batch = new TransferBatch(1);
+        enqueue(new Transfer(player, target, batch));
+        return batch;
+    }
+
+    /**
+     * @return The amount of transfers waiting for their turn, across all targets.
+     */
+    public int getQueued() {
+        var queued = 0;
+        for (var lane : lanes.values())
+            queued += lane.queued();
+        return queued;
+    }
+
+    /**
+     * @return The amount of connections in flight, across all targets.
+     */
+    public int getInFlight() {
+        var inFlight = 0;
+        for (var lane : lanes.values())
+            inFlight += lane.inFlight();
+        return inFlight;
+    }
+
+    private void enqueue(Transfer transfer) {
+        lanes.computeIfAbsent(transfer.target, target -> new Lane()).offer(transfer);
+        ensureTicking();
+    }
+
+    private synchronized void ensureTicking() {
+        if (ticker == null)
+            ticker = proxy.getScheduler().buildTask(plugin, this::tick).repeat(TICK_MILLIS, TimeUnit.MILLISECONDS)
+                    .schedule();
+    }
+
+    private synchronized void tick() {
+        var idle = true;
+        var now = System.nanoTime();
+        for (var lane : lanes.values()) {
+            Transfer transfer;
+            while ((transfer = lane.poll(now)) != null)
+                start(lane, transfer);
+            idle &= lane.isIdle();
+        }
+        // Stop ticking until something else is queued.
+        if (idle && ticker != null) {
+            ticker.cancel();
+            ticker = null;
+        }
+    }
+
+    private void start(Lane lane, Transfer transfer) {
+        if (!transfer.player.isActive()) {
+            lane.done();
+            transfer.batch.failed(transfer.player.getUsername() + " went offline");
+            return;
+        }
+        transfer.attempts++;
+        transfer.player.createConnectionRequest(transfer.target).connect().whenComplete((result, error) -> {
+            lane.done();
+            if (error == null && (result.isSuccessful()
+                    || result.getStatus() == ConnectionRequestBuilder.Status.ALREADY_CONNECTED)) {
+                transfer.batch.succeeded();
+            } else if (error == null && result.getStatus() == ConnectionRequestBuilder.Status.CONNECTION_CANCELLED) {
+                // Cancelled by a plugin or the player, trying again won't help.
+                transfer.batch.failed(transfer.player.getUsername() + ": connection cancelled");
+            } else {
+                retryOrFail(transfer, error != null ? error.toString() : result.getStatus().toString());
+            }
+        });
+    }
+
+    private void retryOrFail(Transfer transfer, String reason) {
+        if (transfer.attempts >= maxAttempts || !transfer.player.isActive()) {
+            logger.warning("Couldn't send " + transfer.player.getUsername() + " to "
+                    + transfer.target.getServerInfo().getName() + ": " + reason);
+            transfer.batch.failed(transfer.player.getUsername() + ": " + reason);
+            return;
+        }
+        transfer.batch.retried();
+        proxy.getScheduler().buildTask(plugin, () -> enqueue(transfer))
+                .delay(retryDelayMillis * transfer.attempts, TimeUnit.MILLISECONDS).schedule();
+    }
+
+    private static class Transfer {
+        private final Player player;
+        private final RegisteredServer target;
+        private final TransferBatch batch;
+        private int attempts;
+
+        Transfer(Player player, RegisteredServer target, TransferBatch batch) {
+            this.player = player;
+            this.target = target;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * The transfers to a single target, paced by a token bucket and a limit of
+     * connections in flight.
+     */
+    private class Lane {
+        private final Queue<Transfer> queue = new ArrayDeque<>();
+        private int inFlight;
+        private double tokens = 1;
+        private long refilledAt = System.nanoTime();
+
+        synchronized void offer(Transfer transfer) {
+            queue.add(transfer);
+        }
+
+        /**
+         * @return The next transfer to start, or null if the lane has to wait.
+         */
+        synchronized Transfer poll(long now) {
+            tokens = Math.min(Math.max(1, ratePerTarget), tokens + (now - refilledAt) / 1e9 * ratePerTarget);
+            refilledAt = now;
+            if (queue.isEmpty() || inFlight >= maxConcurrentPerTarget || tokens < 1)
+                return null;
+            tokens--;
+            inFlight++;
+            return queue.poll();
+        }
+
+        synchronized void done() {
+            inFlight--;
+        }
+
+        synchronized int queued() {
+            return queue.size();
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized boolean isIdle() {
+            return queue.isEmpty() && inFlight == 0;
+        }
+    }
+
+}
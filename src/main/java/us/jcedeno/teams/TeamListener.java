@@ -0,0 +1,31 @@
+package us.jcedeno.teams;
+
+import us.jcedeno.teams.objects.Team;
+
+/**
+ * Listener of the changes made to the teams held in ram by a
+ * {@link TeamManager}, whether they were made locally or recieved from another
+ * node. Listeners are called while the lock of the changed team is held, so
+ * changes to the same team are seen in order. They must be quick and must not
+ * modify the team map.
+ * 
+ * @author jcedeno
+ */
+public interface TeamListener {
+
+    /**
+     * Called when a team is added, replaced or removed.
+     * 
+     * @param old     The team being replaced, or null if there was none.
+     * @param current The new team, or null if the team was removed.
+     */
+    void onTeamChanged(Team old, Team current);
+
+    /**
+     * Called when every team is dropped at once, like before a dataset is
+     * loaded.
+     */
+    default void onTeamsCleared() {
+    }
+
+}
@@ -1,25 +1,51 @@
 package us.jcedeno.teams;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
 import lombok.Getter;
 import lombok.Setter;
+import us.jcedeno.teams.cluster.ClusterMembership;
+import us.jcedeno.teams.cluster.PlayerDirectory;
+import us.jcedeno.teams.codec.TeamCodec;
+import us.jcedeno.teams.codec.TeamCodecs;
 import us.jcedeno.teams.exceptions.EmptyDatasetException;
+import us.jcedeno.teams.leaderboard.Leaderboard;
+import us.jcedeno.teams.metrics.SyncMetrics;
 import us.jcedeno.teams.exceptions.TeamAlreadyExistsException;
 import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.storage.DatasetLoader;
+import us.jcedeno.teams.storage.SnapshotStore;
+import us.jcedeno.teams.storage.TeamScripts;
+import us.jcedeno.teams.sync.CommandResult;
+import us.jcedeno.teams.sync.CommandRpc;
 import us.jcedeno.teams.sync.RedisSyncPipeline;
+import us.jcedeno.teams.sync.SyncTransport;
 
 /**
  * A concurrent, multi nodal, multi threaded team manager.
@@ -27,26 +53,102 @@ import us.jcedeno.teams.sync.RedisSyncPipeline;
  * @author jcedeno
  */
 public abstract class TeamManager {
-    /** Static Variables */
-    private static Gson gson = new Gson();
-    private static UUID nodeId = UUID.randomUUID();
-    private static final String BACKUP_SET = "historical-sets";
+    /** Redis codec with string keys and raw values, used for encoded teams. */
+    public static final RedisCodec<String, byte[]> BINARY_VALUES = RedisCodec.of(StringCodec.UTF8,
+            ByteArrayCodec.INSTANCE);
+    /** How many times a change is retried while others keep writing the team. */
+    private static final int MAX_COMPUTE_ATTEMPTS = 32;
     /** This is the name of the hashset on redis. */
     private @Getter @Setter String dataset = "ffa";
     /** Instance Variables */
+    /** Every manager is its own node, even when several share a jvm. */
+    private final UUID nodeId = UUID.randomUUID();
     private RedisClient redisClient;
+    private ClientResources clientResources;
+    private SyncMetrics metrics;
     private StatefulRedisConnection<String, String> redisConnection;
+    private StatefulRedisConnection<String, byte[]> binaryConnection;
+    /** Codec used to store teams and encode events. */
+    private TeamCodec codec;
+    private @Getter TeamManagerSettings settings;
     private ConcurrentHashMap<UUID, Team> teams;
+    /** Reverse index of player UUID to the UUID of the team they belong to. */
+    private ConcurrentHashMap<UUID, UUID> playerIndex;
     /** Synchronisation pipeline */
     private RedisSyncPipeline syncPipeline;
+    private CommandRpc commandRpc;
+    private ClusterMembership membership;
+    private PlayerDirectory playerDirectory;
+    private volatile long generation;
+    /** Listeners of the changes of the teams in ram. */
+    private final List<TeamListener> listeners = new CopyOnWriteArrayList<>();
+    private Leaderboard leaderboard;
+    private DatasetLoader datasetLoader;
+    private SnapshotStore snapshotStore;
+    private volatile DatasetLoader.LoadReport lastLoad;
     private Logger logger;
 
     public TeamManager(String redisURI) {
-        this.teams = new ConcurrentHashMap<>();
-        this.redisClient = RedisClient.create(redisURI);
-        this.redisConnection = this.redisClient.connect();
-        this.syncPipeline = new RedisSyncPipeline(this);
+        this(redisURI, TeamCodecs.json());
+    }
+
+    /**
+     * @param redisURI The URI of the Redis server.
+     * @param codec    The codec used to write teams and events. Payloads written
+     *                 by any other known codec are still understood.
+     */
+    public TeamManager(String redisURI, TeamCodec codec) {
+        this(redisURI, settingsWith(codec));
+    }
+
+    /**
+     * @param redisURI The URI of the Redis server.
+     * @param settings The settings of the manager.
+     */
+    public TeamManager(String redisURI, TeamManagerSettings settings) {
+        this(settings, redisURI, null);
+    }
+
+    /**
+     * Creates a manager that keeps its teams in ram and exchanges events through
+     * the given transport, without connecting to redis. Anything that reads or
+     * writes redis fails, so it's only meant to measure the in-memory paths.
+     * 
+     * @param settings  The settings of the manager.
+     * @param transport The transport of the sync pipeline.
+     */
+    protected TeamManager(TeamManagerSettings settings, SyncTransport transport) {
+        this(settings, null, transport);
+    }
+
+    private TeamManager(TeamManagerSettings settings, String redisURI, SyncTransport transport) {
+        this.settings = settings;
         this.logger = Logger.getLogger("TeamManager-" + nodeId.toString().split("-")[0]);
+        this.teams = new ConcurrentHashMap<>();
+        this.playerIndex = new ConcurrentHashMap<>();
+        this.codec = TeamCodecs.versioned(settings.getCodec());
+        this.metrics = new SyncMetrics();
+        if (redisURI != null) {
+            // Lettuce times every command and hands the latencies to the metrics.
+            this.clientResources = DefaultClientResources.builder().commandLatencyRecorder(metrics).build();
+            this.redisClient = RedisClient.create(clientResources, redisURI);
+            this.redisConnection = this.redisClient.connect();
+            this.binaryConnection = this.redisClient.connect(BINARY_VALUES);
+        }
+        this.datasetLoader = new DatasetLoader(binaryConnection, this.codec);
+        this.leaderboard = new Leaderboard(this);
+        this.snapshotStore = new SnapshotStore(binaryConnection, nodeId, settings.getSnapshotMaxCount(),
+                settings.getSnapshotMaxAgeMillis());
+        this.syncPipeline = transport != null ? new RedisSyncPipeline(this, transport) : new RedisSyncPipeline(this);
+        this.commandRpc = new CommandRpc(this, syncPipeline);
+        this.membership = new ClusterMembership(this);
+        this.playerDirectory = new PlayerDirectory(this);
+    }
+
+    private static TeamManagerSettings settingsWith(TeamCodec codec) {
+        var settings = new TeamManagerSettings();
+        settings.setCodec(codec);
+        return settings;
     }
 
     /**
@@ -73,14 +175,26 @@ public abstract class TeamManager {
      */
     public abstract void processCommand(String cmd, UUID nodeId);
 
+    /**
+     * Runs a command sent through the {@link CommandRpc}. Defaults to
+     * {@link #processCommand(String, UUID)}, override it to report whether the
+     * command actually ran.
+     * 
+     * @param cmd    The command to run.
+     * @param nodeId The nodeId of the node that sent the command.
+     * @return A stage completed with whether the command ran.
+     */
+    public CompletionStage<Boolean> executeCommand(String cmd, UUID nodeId) {
+        processCommand(cmd, nodeId);
+        return CompletableFuture.completedFuture(true);
+    }
+
     /**
      * @return Returns the player team, it doesn't have one return null.
      */
     public Team getPlayerTeam(UUID uuid) {
-
-        if (teams.isEmpty())
-            return null;
-        return teams.values().stream().filter(team -> team.isMember(uuid)).findFirst().orElse(null);
+        var teamId = playerIndex.get(uuid);
+        return teamId != null ? teams.get(teamId) : null;
     }
 
     /**
@@ -92,7 +206,41 @@ public abstract class TeamManager {
     }
 
     /**
-     * @return The concurrent map of teams currently in ram.
+     * @return The common redis async connection. Commands issued through this
+     *         object return a {@link CompletionStage} and never block the calling
+     *         thread.
+     */
+    public RedisAsyncCommands<String, String> getRedisAsyncConnection() {
+        return redisConnection.async();
+    }
+
+    /**
+     * @return The redis sync connection used for encoded teams and events, values
+     *         are raw bytes. This object blocks the thread that executes it.
+     */
+    public RedisCommands<String, byte[]> getRedisBinarySyncConnection() {
+        return binaryConnection.sync();
+    }
+
+    /**
+     * @return The redis async connection used for encoded teams and events, values
+     *         are raw bytes.
+     */
+    public RedisAsyncCommands<String, byte[]> getRedisBinaryAsyncConnection() {
+        return binaryConnection.async();
+    }
+
+    /**
+     * @return The codec used to store teams and encode events.
+     */
+    public TeamCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return The concurrent map of teams currently in ram. <b>Note</b>: Mutating
+     *         this map directly bypasses the player index, use {@link #put(Team)}
+     *         and {@link #remove(Team)} instead.
      */
     public ConcurrentHashMap<UUID, Team> getTeamsMap() {
         return this.teams;
@@ -107,7 +255,34 @@ public abstract class TeamManager {
      *         mapping for key
      */
     public Team put(Team team) {
-        return this.teams.put(team.getTeamID(), team);
+        var previous = new Team[1];
+        this.teams.compute(team.getTeamID(), (id, old) -> {
+            previous[0] = old;
+            reindex(old, team);
+            notifyListeners(old, team);
+            return team;
+        });
+        return previous[0];
+    }
+
+    /**
+     * Puts the team into the map only if its version is newer than the version of
+     * the copy currently in ram.
+     * 
+     * @param team The team to add to the map.
+     * @return True if the team was put into the map.
+     */
+    public boolean putIfNewer(Team team) {
+        var applied = new boolean[1];
+        this.teams.compute(team.getTeamID(), (id, old) -> {
+            if (old != null && old.getVersion() >= team.getVersion())
+                return old;
+            applied[0] = true;
+            reindex(old, team);
+            notifyListeners(old, team);
+            return team;
+        });
+        return applied[0];
     }
 
     /**
@@ -119,7 +294,224 @@ public abstract class TeamManager {
      *         mapping for key
      */
     public Team remove(Team team) {
-        return this.teams.remove(team.getTeamID());
+        var previous = new Team[1];
+        this.teams.computeIfPresent(team.getTeamID(), (id, old) -> {
+            previous[0] = old;
+            reindex(old, null);
+            notifyListeners(old, null);
+            return null;
+        });
+        return previous[0];
+    }
+
+    /**
+     * Applies a team recieved from another node. Versions that are not newer than
+     * the copy in ram are stale or duplicated and get ignored. If versions were
+     * skipped an update was missed, so the team is fetched again from redis
+     * instead. Teams without a version come from nodes that predate versions and
+     * are applied as they are.
+     * 
+     * @param team The recieved team.
+     */
+    protected void applyRemoteUpdate(Team team) {
+        if (team.getVersion() == 0) {
+            put(team);
+            return;
+        }
+        var local = teams.get(team.getTeamID());
+        var localVersion = local != null ? local.getVersion() : 0L;
+        if (team.getVersion() <= localVersion)
+            return;
+        if (local != null && team.getVersion() > localVersion + 1) {
+            logger.info("Missed updates of team " + team.getTeamID() + " (have " + localVersion + ", recieved "
+                    + team.getVersion() + "), fetching it again.");
+            refetchTeamAsync(team.getTeamID());
+            return;
+        }
+        putIfNewer(team);
+    }
+
+    /**
+     * Applies the destruction of a team recieved from another node. The local copy
+     * is only removed if it's older than the destruction.
+     * 
+     * @param team The destroyed team, carrying the version of its destruction.
+     */
+    protected void applyRemoteDestroy(Team team) {
+        if (team.getVersion() == 0) {
+            remove(team);
+            return;
+        }
+        this.teams.computeIfPresent(team.getTeamID(), (id, old) -> {
+            if (old.getVersion() >= team.getVersion())
+                return old;
+            reindex(old, null);
+            notifyListeners(old, null);
+            return null;
+        });
+    }
+
+    /**
+     * Fetches a single team and its version from redis and applies it if it's
+     * newer than the copy in ram. If the team no longer exists it is removed.
+     * 
+     * @param teamId The UUID of the team.
+     * @return A stage completed with the fetched team, or null if it's gone.
+     */
+    public CompletionStage<Team> refetchTeamAsync(UUID teamId) {
+        CompletionStage<List<Object>> fetched = TeamScripts.FETCH.executeAsync(getRedisBinaryAsyncConnection(),
+                teamKeys(dataset), teamId.toString().getBytes(StandardCharsets.UTF_8));
+        return fetched.thenApply(result -> {
+            var data = (byte[]) result.get(0);
+            if (data == null) {
+                var local = teams.get(teamId);
+                if (local != null)
+                    remove(local);
+                return null;
+            }
+            var team = withVersion(codec.decodeTeam(data), (byte[]) result.get(1));
+            putIfNewer(team);
+            return team;
+        });
+    }
+
+    /**
+     * @param team    A decoded team.
+     * @param version The version read from the versions hash, may be null.
+     * @return The team, with the authoritative version.
+     */
+    private static Team withVersion(Team team, byte[] version) {
+        var parsed = DatasetLoader.parseVersion(version);
+        return parsed >= 0 ? team.withVersion(parsed) : team;
+    }
+
+    /**
+     * @param set The name of a dataset.
+     * @return The keys used by the {@link TeamScripts} for the given dataset.
+     */
+    private static String[] teamKeys(String set) {
+        return new String[] { set, TeamScripts.versionsKey(set), Leaderboard.mirrorKey(set) };
+    }
+
+    /**
+     * @param team A team.
+     * @return The points of the team, as bytes.
+     */
+    private static byte[] teamPoints(Team team) {
+        return Integer.toString(team.getPoints()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param team A team.
+     * @return The version of the team, as bytes.
+     */
+    private static byte[] teamVersion(Team team) {
+        return Long.toString(team.getVersion()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param team A team.
+     * @return The field of the team in the dataset hash, as bytes.
+     */
+    private static byte[] teamField(Team team) {
+        return team.getTeamID().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Pulls all the teams of a dataset, along with their versions, into ram. The
+     * teams are put in the map as they are decoded.
+     * 
+     * @param set The name of the dataset.
+     */
+    private void loadTeams(String set) {
+        this.lastLoad = datasetLoader.load(set, this::putIfNewer);
+        metrics.datasetLoaded(lastLoad.getMillis());
+        logger.info(lastLoad.toString());
+    }
+
+    /**
+     * Non-blocking version of {@link #loadTeams(String)}. The teams are collected
+     * instead of put in the map, so the caller decides when to swap them in.
+     * 
+     * @param set The name of the dataset.
+     * @return A stage completed with the loaded teams.
+     */
+    private CompletionStage<List<Team>> fetchTeamsAsync(String set) {
+        var loaded = new ConcurrentLinkedQueue<Team>();
+        return datasetLoader.loadAsync(set, loaded::add).thenApply(report -> {
+            this.lastLoad = report;
+            metrics.datasetLoaded(report.getMillis());
+            logger.info(report.toString());
+            return new ArrayList<>(loaded);
+        });
+    }
+
+    /**
+     * @return The report of the last dataset load, or null if none happened yet.
+     */
+    public DatasetLoader.LoadReport getLastLoad() {
+        return lastLoad;
+    }
+
+    /**
+     * Clears all the teams in ram along with the player index.
+     */
+    private void clearTeams() {
+        this.teams.clear();
+        this.playerIndex.clear();
+        for (var listener : listeners)
+            listener.onTeamsCleared();
+    }
+
+    /**
+     * @param listener A listener to call on every change of the teams in ram.
+     */
+    public void addTeamListener(TeamListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener previously added.
+     */
+    public void removeTeamListener(TeamListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Must be called while holding the map's lock for the team's key.
+     * 
+     * @param old     The team being replaced, or null if there was none.
+     * @param current The new team, or null if the team is being removed.
+     */
+    private void notifyListeners(Team old, Team current) {
+        for (var listener : listeners) {
+            try {
+                listener.onTeamChanged(old, current);
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Team listener failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Updates the player index to reflect the replacement of a team. Must be
+     * called while holding the map's lock for the team's key.
+     * 
+     * @param old     The team being replaced, or null if there was none.
+     * @param current The new team, or null if the team is being removed.
+     */
+    private void reindex(Team old, Team current) {
+        var currentMembers = current != null && current.getMembers() != null ? new HashSet<>(current.getMembers())
+                : new HashSet<UUID>();
+        if (old != null && old.getMembers() != null) {
+            for (var member : old.getMembers()) {
+                // Only unlink members that left, and only if they still point to this team.
+                if (!currentMembers.contains(member))
+                    playerIndex.remove(member, old.getTeamID());
+            }
+        }
+        for (var member : currentMembers)
+            playerIndex.put(member, current.getTeamID());
     }
 
     /**
@@ -129,17 +521,27 @@ public abstract class TeamManager {
         // Ask redis if there is an ongoing sync in the db
         var syncConn = getRedisSyncConnection();
         // Pull the dataset name
-        var datasetOnBackend = syncConn.get("dataset_name");
+        var datasetOnBackend = syncConn.get(SnapshotStore.DATASET_KEY);
         if (datasetOnBackend != null) {
             this.dataset = datasetOnBackend;
         }
-        if (syncConn.hlen(dataset) != 0) {
-            // Restore all the current data
-            syncConn.hgetall(dataset).forEach((k, v) -> {
-                var team = gson.fromJson(v, Team.class);
-                teams.put(team.getTeamID(), team);
-            });
+        var generationOnBackend = syncConn.get(SnapshotStore.GENERATION_KEY);
+        if (generationOnBackend != null) {
+            this.generation = Long.parseLong(generationOnBackend);
         }
+        // Restore all the current data
+        loadTeams(dataset);
+        // Datasets written before the leaderboard existed have no mirror yet.
+        leaderboard.rebuildMirrorAsync(true);
+    }
+
+    /**
+     * Drops every team in ram and pulls the current dataset again. Used when sync
+     * events may have been lost.
+     */
+    public void reloadDataset() {
+        clearTeams();
+        loadTeams(dataset);
     }
 
     /**
@@ -151,46 +553,114 @@ public abstract class TeamManager {
         return this.syncPipeline.isPipelineUp();
     }
 
+    /**
+     * @return The amount of recieved events waiting to be applied.
+     */
+    public int getPipelineQueueDepth() {
+        return this.syncPipeline.getDispatcher().getQueueDepth();
+    }
+
     /**
      * It changes the dataset that is used to store the teams. both locally and
-     * remotely. This method will block until the operation is completed.
+     * remotely. This method will block until the operation is completed. When
+     * communicating, the current dataset is snapshotted and the switch made
+     * atomically on the redis server.
      * 
      * @param newSet      The new dataset name.
      * @param communicate If true, it will communicate the change to the other
-     *                    nodes.
+     *                    nodes. Otherwise only the local copy is switched.
      */
     public void changeDataset(String newSet, boolean communicate) {
-        // Nill all the data, dump it somewhere.
-        backupDataset();
-        teams.clear();
-        this.dataset = newSet;
-        var syncCon = this.getRedisSyncConnection();
-        if (syncCon.hlen(dataset) != 0) {
-            // Restore all the current data
-            syncCon.hgetall(dataset).forEach((k, v) -> {
-                var team = gson.fromJson(v, Team.class);
-                teams.put(team.getTeamID(), team);
-            });
-        }
-        if (communicate) {
-            syncCon.set("dataset_name", newSet);
-            this.syncPipeline.communicateChangeOfDataset(newSet);
+        if (!communicate) {
+            switchLocally(newSet, generation);
+            return;
         }
+        var newGeneration = snapshotStore.switchDataset(dataset, newSet);
+        switchLocally(newSet, newGeneration);
+        this.syncPipeline.communicateChangeOfDataset(newSet, newGeneration);
     }
 
     /**
-     * It will backup the current team dataset to the historical-sets hash.
+     * Non-blocking version of {@link #changeDataset(String, boolean)}. The local
+     * copy is swapped once the new dataset has been pulled from redis.
+     * 
+     * @param newSet      The new dataset name.
+     * @param communicate If true, it will communicate the change to the other
+     *                    nodes.
+     * @return A stage that completes once the change has taken place.
      */
-    private void backupDataset() {
-        if (!teams.isEmpty() && redisConnection.isOpen()) {
-            // Key in format dataset:timeStamp:nodeId
-            var field = this.dataset + ":" + System.currentTimeMillis() + ":" + nodeId;
-            // Value in format json, contains all teams as an array of teams.
-            var value = gson.toJson(teams.values());
-            // Connect and backup the old data set.
-            var syncCon = getRedisSyncConnection();
-            syncCon.hset(BACKUP_SET, field, value);
+    public CompletionStage<Void> changeDatasetAsync(String newSet, boolean communicate) {
+        CompletionStage<Long> newGeneration = communicate ? snapshotStore.switchDatasetAsync(dataset, newSet)
+                : CompletableFuture.completedFuture(generation);
+        return newGeneration.thenCompose(gen -> fetchTeamsAsync(newSet).thenCompose(loaded -> {
+            clearTeams();
+            this.generation = gen;
+            this.dataset = newSet;
+            loaded.forEach(this::put);
+            if (!communicate)
+                return CompletableFuture.<Void>completedFuture(null);
+            return this.syncPipeline.communicateChangeOfDatasetAsync(newSet, gen).thenAccept(ignored -> {
+            });
+        }));
+    }
+
+    /**
+     * Do not use this method. It is only for internal use. Applies a dataset
+     * change or restore made by another node, unless this node has already seen a
+     * newer generation.
+     * 
+     * @param newSet        The dataset to use.
+     * @param newGeneration The generation after the change, 0 if unknown.
+     */
+    public void applyRemoteDatasetChange(String newSet, long newGeneration) {
+        if (newGeneration != 0 && newGeneration <= generation) {
+            logger.info("Ignoring change to " + newSet + " of generation " + newGeneration + ", already at "
+                    + generation);
+            return;
         }
+        switchLocally(newSet, newGeneration != 0 ? newGeneration : generation);
+    }
+
+    /**
+     * Drops every team in ram and pulls the given dataset.
+     * 
+     * @param newSet        The dataset to use.
+     * @param newGeneration The generation of the dataset.
+     */
+    private void switchLocally(String newSet, long newGeneration) {
+        clearTeams();
+        this.generation = newGeneration;
+        this.dataset = newSet;
+        loadTeams(newSet);
+    }
+
+    /**
+     * @return The generation of the dataset in use. It is bumped on every switch
+     *         or restore.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return The pipeline that keeps this node in sync with the others.
+     */
+    public RedisSyncPipeline getSyncPipeline() {
+        return syncPipeline;
+    }
+
+    /**
+     * @return The live ranking of the teams.
+     */
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * @return The store holding the snapshots of the datasets.
+     */
+    public SnapshotStore getSnapshotStore() {
+        return snapshotStore;
     }
 
     /**
@@ -203,51 +673,82 @@ public abstract class TeamManager {
     }
 
     /**
-     * It restores the old dataset. Once the update is deamed succesful, the
-     * function will communicate to other nodes of the changes.
+     * Non-blocking version of {@link #communicateUpdate(Team)}.
      * 
-     * @throws EmptyDatasetException If the historical-sets hash is not present.
+     * @param team The team that has been updated or created.
+     * @return A stage completed with the amount of nodes that recieved the update.
+     */
+    public CompletionStage<Long> communicateUpdateAsync(Team team) {
+        return this.syncPipeline.communicateCreationOrUpdateAsync(team);
+    }
+
+    /**
+     * It restores the latest snapshot of an old dataset into the current one. The
+     * current dataset is snapshotted first, all on the redis server. Once the
+     * update is deamed succesful, the function will communicate to other nodes of
+     * the changes.
+     * 
+     * @throws EmptyDatasetException If there is no snapshot of the dataset.
      * @param oldSet The old dataset name to be restored.
      */
     public void restoreOldDataset(String oldSet) throws EmptyDatasetException {
-        // Create a synchronous connection to redis.
-        var syncCon = getRedisSyncConnection();
-        var keys = syncCon.hkeys(BACKUP_SET);
-        // Check if the historical-sets is empty
-        if (keys.isEmpty())
-            throw new EmptyDatasetException(BACKUP_SET + " does not contain any hashes.");
-        var matchedFields = new ArrayList<String>();
-        // Iterate through to find those that match the old set.
-        for (var key : keys) {
-            var parsed = key.split(":");
-            // If length greater than 1 means that the key is a valid key.
-            if (parsed.length > 1 && parsed[0].equals(oldSet))
-                matchedFields.add(key);
-        }
-        if (keys.isEmpty())
-            throw new EmptyDatasetException(
-                    "Dataset " + oldSet + " is not present in the backup set " + BACKUP_SET + ".");
-        // Turn the matchedFields list into an array of strings.
-        final var matchedFieldsArray = matchedFields.toArray(new String[0]);
-        var matchedFieldValues = syncCon.hmget(BACKUP_SET, matchedFieldsArray);
-        var newTeamsMap = new HashMap<UUID, Team>();
-        // Iterate through the matchedFieldValues and parse them into teams.
-        for (var fieldValues : matchedFieldValues) {
-            var value = fieldValues.getValue();
-            var teamList = gson.fromJson(value, Team[].class);
-            // Parse all teams into a map.
-            for (var team : teamList) {
-                newTeamsMap.put(team.getTeamID(), team);
-            }
-        }
-        // Backup current data in case of failure.
-        backupDataset();
-        // Perform the change of data
-        teams.clear();
-        teams.putAll(newTeamsMap);
+        restoreOldDataset(oldSet, Long.MAX_VALUE);
+    }
 
+    /**
+     * It restores the latest snapshot of an old dataset taken at or before the
+     * given time into the current one.
+     * 
+     * @param oldSet     The old dataset name to be restored.
+     * @param atOrBefore The max timestamp of the snapshot, in epoch millis.
+     * @throws EmptyDatasetException If there is no such snapshot.
+     */
+    public void restoreOldDataset(String oldSet, long atOrBefore) throws EmptyDatasetException {
+        var newGeneration = snapshotStore.restore(dataset, oldSet, atOrBefore);
+        if (newGeneration == 0)
+            throw EmptyDatasetException.of("There is no snapshot of " + oldSet + " to restore.");
+        switchLocally(dataset, newGeneration);
+        // The snapshot doesn't include the mirror, so it's rewritten from ram.
+        leaderboard.rebuildMirrorAsync(false);
         logger.info("Succesfully restored dataset: " + oldSet);
-        // TODO: Communicate update to other nodes.
+        this.syncPipeline.communicateChangeOfDataset(dataset, newGeneration);
+    }
+
+    /**
+     * Non-blocking version of {@link #restoreOldDataset(String)}. The stage
+     * completes exceptionally with an {@link EmptyDatasetException} if there is
+     * nothing to restore.
+     * 
+     * @param oldSet The old dataset name to be restored.
+     * @return A stage that completes once the dataset has been restored.
+     */
+    public CompletionStage<Void> restoreOldDatasetAsync(String oldSet) {
+        return restoreOldDatasetAsync(oldSet, Long.MAX_VALUE);
+    }
+
+    /**
+     * Non-blocking version of {@link #restoreOldDataset(String, long)}.
+     * 
+     * @param oldSet     The old dataset name to be restored.
+     * @param atOrBefore The max timestamp of the snapshot, in epoch millis.
+     * @return A stage that completes once the dataset has been restored.
+     */
+    public CompletionStage<Void> restoreOldDatasetAsync(String oldSet, long atOrBefore) {
+        var current = dataset;
+        return snapshotStore.restoreAsync(current, oldSet, atOrBefore).thenCompose(newGeneration -> {
+            if (newGeneration == 0)
+                return CompletableFuture.<Void>failedFuture(
+                        EmptyDatasetException.of("There is no snapshot of " + oldSet + " to restore."));
+            return fetchTeamsAsync(current).thenCompose(loaded -> {
+                clearTeams();
+                this.generation = newGeneration;
+                loaded.forEach(this::put);
+                leaderboard.rebuildMirrorAsync(false);
+                logger.info("Succesfully restored dataset: " + oldSet);
+                return this.syncPipeline.communicateChangeOfDatasetAsync(current, newGeneration);
+            }).thenAccept(ignored -> {
+            });
+        });
     }
 
     /**
@@ -279,6 +780,32 @@ public abstract class TeamManager {
         return createTeam(teamName, UUID.randomUUID(), uuids);
     }
 
+    /**
+     * Non-blocking version of {@link #createTeam(String, UUID, UUID...)}. The stage
+     * completes exceptionally with a {@link TeamAlreadyExistsException} if the team
+     * already exists.
+     * 
+     * @param teamName The name of the team.
+     * @param teamId   The UUID of the team.
+     * @param uuids    The UUIDs of the players in the team.
+     * @return A stage completed with the created team.
+     */
+    public CompletionStage<Team> createTeamAsync(String teamName, UUID teamId, UUID... uuids) {
+        return registerTeamAsync(new Team(teamId, Arrays.asList(uuids), teamName))
+                .thenCompose(team -> communicateUpdateAsync(team).thenApply(ignored -> team));
+    }
+
+    /**
+     * Non-blocking version of {@link #createTeam(String, UUID...)}.
+     * 
+     * @param teamName The name of the team.
+     * @param uuids    The UUIDs of the players in the team.
+     * @return A stage completed with the created team.
+     */
+    public CompletionStage<Team> createTeamAsync(String teamName, UUID... uuids) {
+        return createTeamAsync(teamName, UUID.randomUUID(), uuids);
+    }
+
     /**
      * A method that registers a new team in the database. Throws an exception if
      * the team already exists.
@@ -289,15 +816,34 @@ public abstract class TeamManager {
      * @return The team that was registered.
      */
     public Team registerTeam(Team team) throws TeamAlreadyExistsException {
-        if (!validateTeam(team)) {
+        Long version = TeamScripts.REGISTER.execute(getRedisBinarySyncConnection(), teamKeys(dataset),
+                teamField(team), codec.encodeTeam(team), teamPoints(team));
+        if (version == 0)
             throw TeamAlreadyExistsException.of(team);
-        }
-        var syncCon = getRedisSyncConnection();
-        syncCon.hset(dataset, team.getTeamID().toString(), gson.toJson(team));
+        var registered = team.withVersion(version);
+        put(registered);
 
-        teams.put(team.getTeamID(), team);
+        return registered;
+    }
 
-        return team;
+    /**
+     * Non-blocking version of {@link #registerTeam(Team)}. The stage completes
+     * exceptionally with a {@link TeamAlreadyExistsException} if the team already
+     * exists.
+     * 
+     * @param team The team to register.
+     * @return A stage completed with the team that was registered.
+     */
+    public CompletionStage<Team> registerTeamAsync(Team team) {
+        CompletionStage<Long> registered = TeamScripts.REGISTER.executeAsync(getRedisBinaryAsyncConnection(),
+                teamKeys(dataset), teamField(team), codec.encodeTeam(team), teamPoints(team));
+        return registered.thenCompose(version -> {
+            if (version == 0)
+                return CompletableFuture.<Team>failedFuture(TeamAlreadyExistsException.of(team));
+            var withVersion = team.withVersion(version);
+            put(withVersion);
+            return CompletableFuture.completedFuture(withVersion);
+        });
     }
 
     /**
@@ -307,54 +853,194 @@ public abstract class TeamManager {
      * @return The destroyed team or null if not present.
      */
     public Team destroyTeam(Team team) {
-        var affected = getRedisSyncConnection().hdel(dataset, team.getTeamID().toString());
-        this.syncPipeline.communicateDestructionOfTeam(team);
-        return affected > 0 ? teams.remove(team.getTeamID()) : null;
+        Long version = TeamScripts.DESTROY.execute(getRedisBinarySyncConnection(), teamKeys(dataset),
+                teamField(team));
+        // The destruction carries its own version so other nodes can order it.
+        var destroyed = version > 0 ? team.withVersion(version) : team;
+        this.syncPipeline.communicateDestructionOfTeam(destroyed);
+        return version > 0 ? remove(destroyed) : null;
     }
 
     /**
-     * A method that validates if a team already exists in some part of the state.
+     * Non-blocking version of {@link #destroyTeam(Team)}.
      * 
-     * @param team The team to validate.
-     * @return True if the team exists, false otherwise.
+     * @param team The team to destroy.
+     * @return A stage completed with the destroyed team or null if not present.
      */
-    private boolean validateTeam(Team team) {
-        /**
-         * Should check locally, then remotely. Also, ensure a user is not present in
-         * two teams at once.
-         */
-        if (redisConnection.isOpen())
-            return !getRedisSyncConnection().hexists(dataset, team.getTeamID().toString());
-        // Check if player is already member of a team
-        for (var teamEntry : teams.entrySet()) {
-            var queryTeam = teamEntry.getValue();
-            if (queryTeam.getMembers().contains(team.getTeamID()))
-                return false;
-        }
-
-        return team != null;
+    public CompletionStage<Team> destroyTeamAsync(Team team) {
+        CompletionStage<Long> destroyed = TeamScripts.DESTROY.executeAsync(getRedisBinaryAsyncConnection(),
+                teamKeys(dataset), teamField(team));
+        return destroyed.thenCompose(version -> {
+            var withVersion = version > 0 ? team.withVersion(version) : team;
+            return this.syncPipeline.communicateDestructionOfTeamAsync(withVersion)
+                    .thenApply(ignored -> version > 0 ? remove(withVersion) : null);
+        });
     }
 
     /**
-     * A method that write an update of a team to the database.
+     * A method that write an update of a team to the database. The team is put
+     * in ram with the version assigned by redis.
      * 
      * @param team The team to update.
      * @return true if field is a new field in the hash and value was set. false if
      *         field already exists in the hash and the value was updated.
      */
     public boolean writeTeamUpdate(Team team) {
-        return getRedisSyncConnection().hset(dataset, team.getTeamID().toString(), gson.toJson(team));
+        return write(team).getVersion() == 1;
+    }
+
+    /**
+     * Non-blocking version of {@link #writeTeamUpdate(Team)}.
+     * 
+     * @param team The team to update.
+     * @return A stage completed with true if field is a new field in the hash.
+     */
+    public CompletionStage<Boolean> writeTeamUpdateAsync(Team team) {
+        return writeAsync(team).thenApply(written -> written.getVersion() == 1);
+    }
+
+    /**
+     * @param team The team to write.
+     * @return The team as written, with the version assigned by redis.
+     */
+    private Team write(Team team) {
+        Long version = TeamScripts.WRITE.execute(getRedisBinarySyncConnection(), teamKeys(dataset), teamField(team),
+                codec.encodeTeam(team), teamPoints(team));
+        var written = team.withVersion(version);
+        putIfNewer(written);
+        return written;
+    }
+
+    /**
+     * Non-blocking version of {@link #write(Team)}.
+     */
+    private CompletionStage<Team> writeAsync(Team team) {
+        CompletionStage<Long> written = TeamScripts.WRITE.executeAsync(getRedisBinaryAsyncConnection(),
+                teamKeys(dataset), teamField(team), codec.encodeTeam(team), teamPoints(team));
+        return written.thenApply(version -> {
+            var withVersion = team.withVersion(version);
+            putIfNewer(withVersion);
+            return withVersion;
+        });
     }
 
     /**
      * Function intended to be called to forcibly update a team to the backend.
-     * NOTE: No checks are performed when this is called. Use with caution.
+     * NOTE: No checks are performed when this is called, whatever was written in
+     * between is overwritten. Use {@link #computeTeam(UUID, UnaryOperator)} to
+     * change a team based on its current state.
      * 
      * @param team The team to update.
      */
     public void modifyTeam(Team team) {
-        this.writeTeamUpdate(team);
-        this.communicateUpdate(team);
+        this.communicateUpdate(write(team));
+    }
+
+    /**
+     * Non-blocking version of {@link #modifyTeam(Team)}.
+     * 
+     * @param team The team to update.
+     * @return A stage completed with the team as written once the update has been
+     *         propagated.
+     */
+    public CompletionStage<Team> modifyTeamAsync(Team team) {
+        return writeAsync(team).thenCompose(written -> communicateUpdateAsync(written).thenApply(ignored -> written));
+    }
+
+    /**
+     * Atomically replaces a team with the result of applying the change to its
+     * latest copy, in ram and in redis, and tells the other nodes. The write only
+     * goes through if nobody wrote the team since that copy. Otherwise the team is
+     * fetched again and the change applied on top of it, so concurrent writers,
+     * from this or any other node, never overwrite each other. The change may run
+     * more than once and must have no side effects.
+     * 
+     * @param teamId The UUID of the team.
+     * @param change Builds the new team from the current one. Returning the same
+     *               instance leaves the team as it is.
+     * @return The team as written, or null if there is no such team.
+     * @throws ConcurrentModificationException If the team kept being written by
+     *                                         others.
+     */
+    public Team computeTeam(UUID teamId, UnaryOperator<Team> change) {
+        for (int attempt = 0; attempt < MAX_COMPUTE_ATTEMPTS; attempt++) {
+            var current = teams.get(teamId);
+            if (current == null)
+                return null;
+            var updated = changed(current, change);
+            if (updated == current)
+                return current;
+            Long version = TeamScripts.WRITE_IF_VERSION.execute(getRedisBinarySyncConnection(), teamKeys(dataset),
+                    teamField(updated), codec.encodeTeam(updated), teamPoints(updated), teamVersion(current));
+            if (version > 0) {
+                var written = updated.withVersion(version);
+                putIfNewer(written);
+                communicateUpdate(written);
+                return written;
+            }
+            // Written by someone else in between, or gone. Start over from redis' copy.
+            refetchTeamAsync(teamId).toCompletableFuture().join();
+            if (version == 0)
+                return null;
+        }
+        throw new ConcurrentModificationException("Gave up writing team " + teamId + " after "
+                + MAX_COMPUTE_ATTEMPTS + " conflicts");
+    }
+
+    /**
+     * Non-blocking version of {@link #computeTeam(UUID, UnaryOperator)}. The stage
+     * completes exceptionally with a {@link ConcurrentModificationException} if
+     * the team kept being written by others.
+     * 
+     * @param teamId The UUID of the team.
+     * @param change Builds the new team from the current one.
+     * @return A stage completed with the team as written, or null if there is no
+     *         such team.
+     */
+    public CompletionStage<Team> computeTeamAsync(UUID teamId, UnaryOperator<Team> change) {
+        return computeTeamAsync(teamId, change, 0);
+    }
+
+    private CompletionStage<Team> computeTeamAsync(UUID teamId, UnaryOperator<Team> change, int attempt) {
+        if (attempt >= MAX_COMPUTE_ATTEMPTS)
+            return CompletableFuture.failedFuture(new ConcurrentModificationException("Gave up writing team "
+                    + teamId + " after " + MAX_COMPUTE_ATTEMPTS + " conflicts"));
+        var current = teams.get(teamId);
+        if (current == null)
+            return CompletableFuture.completedFuture(null);
+        Team updated;
+        try {
+            updated = changed(current, change);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        if (updated == current)
+            return CompletableFuture.completedFuture(current);
+        CompletionStage<Long> written = TeamScripts.WRITE_IF_VERSION.executeAsync(getRedisBinaryAsyncConnection(),
+                teamKeys(dataset), teamField(updated), codec.encodeTeam(updated), teamPoints(updated),
+                teamVersion(current));
+        return written.thenCompose(version -> {
+            if (version > 0) {
+                var withVersion = updated.withVersion(version);
+                putIfNewer(withVersion);
+                return communicateUpdateAsync(withVersion).thenApply(ignored -> withVersion);
+            }
+            return refetchTeamAsync(teamId).thenCompose(
+                    fetched -> version == 0 ? CompletableFuture.completedFuture(null)
+                            : computeTeamAsync(teamId, change, attempt + 1));
+        });
+    }
+
+    /**
+     * @param current The current team.
+     * @param change  The change to apply.
+     * @return The changed team.
+     */
+    private static Team changed(Team current, UnaryOperator<Team> change) {
+        var updated = change.apply(current);
+        if (updated == null || !updated.getTeamID().equals(current.getTeamID()))
+            throw new IllegalArgumentException("A change can't remove a team or change its id");
+        return updated;
     }
 
     /**
@@ -367,6 +1053,58 @@ public abstract class TeamManager {
         return this.syncPipeline.communicateCommandExecution(cmd);
     }
 
+    /**
+     * Non-blocking version of {@link #sendCommandToNodes(String)}.
+     * 
+     * @param cmd The command to be executed.
+     * @return A stage completed with how many nodes recieved the command.
+     */
+    public CompletionStage<Long> sendCommandToNodesAsync(String cmd) {
+        return this.syncPipeline.communicateCommandExecutionAsync(cmd);
+    }
+
+    /**
+     * Sends a command to some nodes and waits for them to ack it.
+     * 
+     * @param cmd     The command to be executed.
+     * @param timeout How long to wait for the acks.
+     * @param unit    The unit of the timeout.
+     * @param nodeIds The nodes to run it, none for every other node.
+     * @return A stage completed with the acks once every node answered or the
+     *         timeout expired.
+     */
+    public CompletionStage<CommandResult> sendCommand(String cmd, long timeout, TimeUnit unit, UUID... nodeIds) {
+        return this.commandRpc.send(cmd, List.of(nodeIds), timeout, unit);
+    }
+
+    /**
+     * @return The metrics of the redis commands and events of this node.
+     */
+    public SyncMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The view of the nodes of the cluster.
+     */
+    public ClusterMembership getMembership() {
+        return membership;
+    }
+
+    /**
+     * @return The directory of where every player of the cluster is.
+     */
+    public PlayerDirectory getPlayerDirectory() {
+        return playerDirectory;
+    }
+
+    /**
+     * @return The rpc used to run commands in other nodes.
+     */
+    public CommandRpc getCommandRpc() {
+        return commandRpc;
+    }
+
     /**
      * @return The redis client.
      */
@@ -392,26 +1130,17 @@ public abstract class TeamManager {
      * A method that performs a total disconnection from the redis server.
      */
     public void disconect() {
+        this.playerDirectory.stop();
+        this.membership.stop();
+        this.syncPipeline.close();
+        this.commandRpc.close();
+        this.metrics.unregister();
+        if (redisClient == null)
+            return;
         this.redisConnection.close();
-        this.syncPipeline.closePubSubConnection();
-    }
-
-    /**
-     * Ejemplo de como hacer un team usando completable futures para hacerlo
-     * non-blocking.
-     */
-    void comoHacerUnTeamXd() {
-        CompletableFuture.supplyAsync(() -> {
-            try {
-                return createTeam("teamName", UUID.randomUUID(), new UUID[] { UUID.randomUUID() });
-            } catch (TeamAlreadyExistsException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }).thenAccept(teamOrNull -> {
-            System.out.println(teamOrNull.getTeamName() + " fue creado.");
-
-        });
+        this.binaryConnection.close();
+        this.redisClient.shutdown();
+        this.clientResources.shutdown();
     }
 
 }
@@ -0,0 +1,29 @@
+package us.jcedeno.teams;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+import lombok.Setter;
+import us.jcedeno.teams.codec.TeamCodec;
+import us.jcedeno.teams.codec.TeamCodecs;
+import us.jcedeno.teams.sync.SyncTransport;
+
+/**
+ * Tunables of a {@link TeamManager}. The defaults match the behaviour of the
+ * manager before any of them existed.
+ * 
+ * @author jcedeno
+ */
+public class TeamManagerSettings {
+    /** The codec used to write teams and events. */
+    private @Getter @Setter TeamCodec codec = TeamCodecs.json();
+    /** How the sync messages travel between nodes. */
+    private @Getter @Setter SyncTransport.Type transport = SyncTransport.Type.PUBSUB;
+    /** Approximate amount of events kept per stream by the streams transport. */
+    private @Getter @Setter long streamMaxLength = 10_000;
+    /** Max amount of snapshots kept per dataset, 0 for no limit. */
+    private @Getter @Setter int snapshotMaxCount = 20;
+    /** Max age of the snapshots kept, 0 for no limit. */
+    private @Getter @Setter long snapshotMaxAgeMillis = TimeUnit.DAYS.toMillis(7);
+
+}
@@ -0,0 +1,252 @@
+package us.jcedeno.teams.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import io.lettuce.core.ScriptOutputType;
+import lombok.Getter;
+import lombok.Setter;
+import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.storage.LuaScript;
+
+/**
+ * Keeps track of the nodes of the cluster and whether they are alive.
+ * <p>
+ * Every node registers itself in a key that expires after
+ * {@link #getTtlMillis()} and refreshes it every {@link #getIntervalMillis()},
+ * along with its entry in a sorted set of every node scored by the server time
+ * of its last heartbeat. The same script returns every registration, so each
+ * heartbeat also refreshes the local view. Nodes that miss two heartbeats are
+ * suspect, and the ones whose key expired are dead. Heartbeats are also
+ * published over the sync pipeline so other nodes see changes right away, each
+ * one carrying how long the previous publish took to be acknowledged by redis.
+ * 
+ * @author jcedeno
+ */
+public class ClusterMembership {
+    /** Topic of the published heartbeats. */
+    public static final String TOPIC = "membership";
+    /** Sorted set of every node, scored by the time of its last heartbeat. */
+    public static final String NODES_KEY = "dedsafio:nodes";
+    /** Prefix of the key holding the registration of a node. */
+    public static final String NODE_PREFIX = "dedsafio:node:";
+    /** How many ttls a dead node is remembered before it's forgotten. */
+    private static final int FORGET_AFTER_TTLS = 10;
+    private static final Gson gson = new Gson();
+
+    /**
+     * Registers a node and reads every registration. KEYS: nodes. ARGV: node id,
+     * registration, ttl, forget after, node key prefix. Returns a list with the
+     * server time in millis and a flat list of node id, last heartbeat and
+     * registration triples, the registration being empty if it expired.
+     */
+    private static final LuaScript HEARTBEAT = new LuaScript(String.join("\n",
+            "redis.replicate_commands()",
+            "local time = redis.call('TIME')",
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)",
+            "redis.call('SET', ARGV[5] .. ARGV[1], ARGV[2], 'PX', ARGV[3])",
+            "redis.call('ZADD', KEYS[1], now, ARGV[1])",
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - tonumber(ARGV[4]))",
+            "local nodes = redis.call('ZRANGE', KEYS[1], 0, -1, 'WITHSCORES')",
+            "local out = {}",
+            "for i = 1, #nodes, 2 do",
+            "  out[#out + 1] = nodes[i]",
+            "  out[#out + 1] = nodes[i + 1]",
+            "  out[#out + 1] = redis.call('GET', ARGV[5] .. nodes[i]) or ''",
+            "end",
+            "return {now, out}"), ScriptOutputType.MULTI);
+
+    private final TeamManager teamManager;
+    private final UUID nodeId;
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<UUID, NodeInfo> nodes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final Logger logger = Logger.getLogger("membership");
+    private @Getter @Setter String name;
+    private @Setter IntSupplier playerCount = () -> 0;
+    private @Getter @Setter long intervalMillis = 2000;
+    private @Getter @Setter long ttlMillis = 6000;
+    private volatile long lastPublishMicros = -1;
+    private ScheduledFuture<?> heartbeat;
+
+    /**
+     * @param teamManager The team manager whose node is registered.
+     */
+    public ClusterMembership(TeamManager teamManager) {
+        this.teamManager = teamManager;
+        this.nodeId = teamManager.getNodeId();
+        this.name = nodeId.toString().split("-")[0];
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "membership-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        teamManager.getSyncPipeline().registerClusterHandler(TOPIC, this::onHeartbeat);
+    }
+
+    /**
+     * Starts heartbeating.
+     */
+    public synchronized void start() {
+        if (heartbeat != null)
+            return;
+        heartbeat = executor.scheduleWithFixedDelay(this::beat, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return True if this node is heartbeating.
+     */
+    public synchronized boolean isRunning() {
+        return heartbeat != null;
+    }
+
+    /**
+     * Stops heartbeating and removes the registration of this node, so others
+     * see it leave right away.
+     */
+    public synchronized void stop() {
+        if (heartbeat == null)
+            return;
+        heartbeat.cancel(false);
+        heartbeat = null;
+        executor.shutdown();
+        try {
+            var commands = teamManager.getRedisSyncConnection();
+            commands.del(NODE_PREFIX + nodeId);
+            commands.zrem(NODES_KEY, nodeId.toString());
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Couldn't unregister node " + name, ex);
+        }
+    }
+
+    private void beat() {
+        var self = new NodeInfo(nodeId, name, playerCount.getAsInt(), lastPublishMicros, startedAt);
+        var registration = gson.toJson(self);
+        try {
+            List<Object> result = HEARTBEAT.execute(teamManager.getRedisSyncConnection(), new String[] { NODES_KEY },
+                    nodeId.toString(), registration, Long.toString(ttlMillis),
+                    Long.toString(ttlMillis * FORGET_AFTER_TTLS), NODE_PREFIX);
+            refresh(result);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Heartbeat of node " + name + " failed", ex);
+            return;
+        }
+        // Only the PUBLISH call is timed, this node never recieves its own heartbeats.
+        var start = System.nanoTime();
+        teamManager.getSyncPipeline()
+                .communicateClusterMessageAsync(TOPIC, registration.getBytes(StandardCharsets.UTF_8))
+                .thenRun(() -> lastPublishMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void refresh(List<Object> result) {
+        var now = ((Number) result.get(0)).longValue();
+        var entries = (List<Object>) result.get(1);
+        var seen = new HashSet<UUID>();
+        for (int i = 0; i + 2 < entries.size(); i += 3) {
+            var id = UUID.fromString(entries.get(i).toString());
+            var lastHeartbeat = (long) Double.parseDouble(entries.get(i + 1).toString());
+            var registration = entries.get(i + 2).toString();
+            seen.add(id);
+            if (registration.isEmpty()) {
+                update(id, null, NodeState.DEAD, lastHeartbeat);
+                continue;
+            }
+            var state = now - lastHeartbeat > intervalMillis * 2 ? NodeState.SUSPECT : NodeState.ALIVE;
+            update(id, parse(registration), state, lastHeartbeat);
+        }
+        // Nodes forgotten by the server.
+        nodes.keySet().removeIf(id -> !seen.contains(id));
+    }
+
+    private void onHeartbeat(UUID from, byte[] body) {
+        var info = parse(new String(body, StandardCharsets.UTF_8));
+        if (info != null)
+            update(from, info, NodeState.ALIVE, -1);
+    }
+
+    /**
+     * Replaces what's known of a node and logs its state changes.
+     * 
+     * @param info          What the node said about itself, null to keep what's
+     *                      known.
+     * @param lastHeartbeat Server time of its last heartbeat, -1 if unknown.
+     */
+    private void update(UUID id, NodeInfo info, NodeState state, long lastHeartbeat) {
+        nodes.compute(id, (key, old) -> {
+            var current = info != null ? info : old;
+            if (current == null)
+                return null;
+            var oldState = old != null ? old.getState() : null;
+            var seenAt = old != null ? Math.max(old.getLastHeartbeat(), lastHeartbeat) : lastHeartbeat;
+            current.markSeen(state, seenAt);
+            if (oldState == null && !id.equals(nodeId))
+                logger.info("Node " + current + " joined the cluster");
+            else if (oldState != state && state == NodeState.DEAD)
+                logger.warning("Node " + current + " stopped heartbeating, marking it dead");
+            else if (oldState != state && state == NodeState.SUSPECT)
+                logger.warning("Node " + current + " missed its heartbeats");
+            else if (oldState != state && state == NodeState.ALIVE)
+                logger.info("Node " + current + " is heartbeating again");
+            return current;
+        });
+    }
+
+    private NodeInfo parse(String registration) {
+        try {
+            var info = gson.fromJson(registration, NodeInfo.class);
+            return info != null && info.getNodeId() != null ? info : null;
+        } catch (JsonParseException ex) {
+            logger.warning("Malformed node registration: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return Every known node, this one included, whatever its state.
+     */
+    public Collection<NodeInfo> getNodes() {
+        return List.copyOf(nodes.values());
+    }
+
+    /**
+     * @return The nodes that are heartbeating on time, this one included.
+     */
+    public List<NodeInfo> getAliveNodes() {
+        return nodes.values().stream().filter(NodeInfo::isAlive).collect(Collectors.toList());
+    }
+
+    /**
+     * @param id The id of a node.
+     * @return What is known of the node, or null if it isn't known.
+     */
+    public NodeInfo getNode(UUID id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * @param id The id of a node.
+     * @return True if the node is heartbeating on time.
+     */
+    public boolean isAlive(UUID id) {
+        var node = nodes.get(id);
+        return node != null && node.isAlive();
+    }
+
+}
@@ -0,0 +1,53 @@
+package us.jcedeno.teams.cluster;
+
+import java.util.UUID;
+
+import lombok.Getter;
+
+/**
+ * What a node tells the others about itself on every heartbeat, along with
+ * what this node knows about its liveness.
+ * 
+ * @author jcedeno
+ */
+public class NodeInfo {
+    private final @Getter UUID nodeId;
+    private final @Getter String name;
+    private final @Getter int players;
+    /**
+     * How long redis took to acknowledge the last heartbeat published by the
+     * node, -1 if unknown. It doesn't include the delivery to other nodes.
+     */
+    private final @Getter long publishMicros;
+    private final @Getter long startedAt;
+    /** Local state, not shared. */
+    private transient volatile @Getter NodeState state = NodeState.ALIVE;
+    /** Server time of the last heartbeat of the node, -1 if not read yet. */
+    private transient volatile @Getter long lastHeartbeat;
+
+    public NodeInfo(UUID nodeId, String name, int players, long publishMicros, long startedAt) {
+        this.nodeId = nodeId;
+        this.name = name;
+        this.players = players;
+        this.publishMicros = publishMicros;
+        this.startedAt = startedAt;
+    }
+
+    void markSeen(NodeState state, long lastHeartbeat) {
+        this.state = state;
+        this.lastHeartbeat = lastHeartbeat;
+    }
+
+    /**
+     * @return True if the node is known to be heartbeating.
+     */
+    public boolean isAlive() {
+        return state == NodeState.ALIVE;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + nodeId.toString().split("-")[0] + ", " + state + ", " + players + " players)";
+    }
+
+}
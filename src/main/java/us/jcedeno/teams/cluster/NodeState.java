@@ -0,0 +1,15 @@
+package us.jcedeno.teams.cluster;
+
+/**
+ * The liveness of a node as seen by this one.
+ * 
+ * @author jcedeno
+ */
+public enum NodeState {
+    /** Heartbeating on time. */
+    ALIVE,
+    /** Missed a few heartbeats, but its registration hasn't expired yet. */
+    SUSPECT,
+    /** Its registration expired, the node is hung or gone. */
+    DEAD;
+}
@@ -0,0 +1,338 @@
+package us.jcedeno.teams.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.lettuce.core.ScriptOutputType;
+import lombok.Getter;
+import lombok.Setter;
+import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.storage.LuaScript;
+
+/**
+ * Directory of where every player of the cluster is connected, shared by all
+ * the proxies through redis.
+ * <p>
+ * Connections and disconnections are queued and written in batches every
+ * {@link #getFlushMillis()}, a player's last change winning within a batch. A
+ * proxy only removes the players it registered, so a player who switched
+ * proxies is never removed by the old one. Lookups go through a local cache,
+ * and every batch tells the other proxies which players to drop from theirs. A
+ * lookup that raced with a change isn't cached, so it can't outlive it.
+ * Players registered by nodes the membership knows are not alive are treated
+ * as offline.
+ * 
+ * @author jcedeno
+ */
+public class PlayerDirectory {
+    /** Topic of the cache invalidations. */
+    public static final String TOPIC = "directory";
+    /** Hash of player id to location. */
+    public static final String PLAYERS_KEY = "dedsafio:players";
+    /** Hash of lowercase player name to player id. */
+    public static final String NAMES_KEY = "dedsafio:player-names";
+
+    /**
+     * Writes a batch of changes. KEYS: players, names. ARGV: node id, amount of
+     * registrations, then player id, location and lowercase name of every
+     * registration, then player id and lowercase name of every removal. Removals
+     * of players registered by another node are ignored. Returns the amount of
+     * registrations.
+     */
+    private static final LuaScript FLUSH = new LuaScript(String.join("\n",
+            "local node = ARGV[1] .. '|'",
+            "local puts = tonumber(ARGV[2])",
+            "local i = 3",
+            "for _ = 1, puts do",
+            "  redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])",
+            "  redis.call('HSET', KEYS[2], ARGV[i + 2], ARGV[i])",
+            "  i = i + 3",
+            "end",
+            "while i <= #ARGV do",
+            "  local current = redis.call('HGET', KEYS[1], ARGV[i])",
+            "  if current and string.sub(current, 1, #node) == node then",
+            "    redis.call('HDEL', KEYS[1], ARGV[i])",
+            "    if redis.call('HGET', KEYS[2], ARGV[i + 1]) == ARGV[i] then",
+            "      redis.call('HDEL', KEYS[2], ARGV[i + 1])",
+            "    end",
+            "  end",
+            "  i = i + 2",
+            "end",
+            "return puts"), ScriptOutputType.INTEGER);
+
+    /**
+     * Finds a player by name. KEYS: names, players. ARGV: lowercase name. Returns
+     * a list with the player id and location, empty if the player isn't there.
+     */
+    private static final LuaScript FIND_BY_NAME = new LuaScript(String.join("\n",
+            "local id = redis.call('HGET', KEYS[1], ARGV[1])",
+            "if not id then return {} end",
+            "local location = redis.call('HGET', KEYS[2], id)",
+            "if not location then return {} end",
+            "return {id, location}"), ScriptOutputType.MULTI);
+
+    private final TeamManager teamManager;
+    private final UUID nodeId;
+    /** Changes waiting for the next batch, null locations being removals. */
+    private final Map<UUID, Change> pending = new LinkedHashMap<>();
+    private final Map<UUID, PlayerLocation> cache = new ConcurrentHashMap<>();
+    private final Map<String, UUID> nameCache = new ConcurrentHashMap<>();
+    /**
+     * Bumped before any cached entry is changed, lookups that saw it move while
+     * reading from redis don't cache what they read.
+     */
+    private final AtomicLong cacheChanges = new AtomicLong();
+    private final ScheduledExecutorService executor;
+    private final Logger logger = Logger.getLogger("player-directory");
+    private @Getter @Setter long flushMillis = 100;
+    private volatile boolean started;
+
+    /**
+     * @param teamManager The team manager of this node.
+     */
+    public PlayerDirectory(TeamManager teamManager) {
+        this.teamManager = teamManager;
+        this.nodeId = teamManager.getNodeId();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "player-directory-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        teamManager.getSyncPipeline().registerClusterHandler(TOPIC, this::onInvalidation);
+    }
+
+    /**
+     * Starts writing the queued changes every {@link #getFlushMillis()}.
+     */
+    public synchronized void start() {
+        if (started)
+            return;
+        started = true;
+        executor.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the changes still queued and stops.
+     */
+    public synchronized void stop() {
+        if (!started)
+            return;
+        started = false;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Queues the registration of a player connected to a server through this
+     * node.
+     * 
+     * @param player The player id.
+     * @param name   The player name.
+     * @param server The backend server.
+     */
+    public void connected(UUID player, String name, String server) {
+        var location = new PlayerLocation(player, name, nodeId, server);
+        cacheChanges.incrementAndGet();
+        cache.put(player, location);
+        nameCache.put(name.toLowerCase(), player);
+        synchronized (pending) {
+            pending.remove(player);
+            pending.put(player, new Change(name, location));
+        }
+    }
+
+    /**
+     * Queues the removal of a player that left this node.
+     * 
+     * @param player The player id.
+     * @param name   The player name.
+     */
+    public void disconnected(UUID player, String name) {
+        cacheChanges.incrementAndGet();
+        cache.remove(player);
+        nameCache.remove(name.toLowerCase());
+        synchronized (pending) {
+            pending.remove(player);
+            pending.put(player, new Change(name, null));
+        }
+    }
+
+    /**
+     * Writes the queued changes in a single script and tells the other nodes to
+     * drop them from their caches. If the write fails the changes are kept for
+     * the next batch.
+     */
+    void flush() {
+        List<Map.Entry<UUID, Change>> batch;
+        synchronized (pending) {
+            if (pending.isEmpty())
+                return;
+            batch = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        var puts = new ArrayList<String>();
+        var removals = new ArrayList<String>();
+        var invalidation = new StringBuilder();
+        for (var entry : batch) {
+            var change = entry.getValue();
+            var lowerName = change.name.toLowerCase();
+            if (change.location != null) {
+                puts.add(entry.getKey().toString());
+                puts.add(change.location.encode());
+                puts.add(lowerName);
+            } else {
+                removals.add(entry.getKey().toString());
+                removals.add(lowerName);
+            }
+            invalidation.append(entry.getKey()).append(' ').append(lowerName).append('\n');
+        }
+        var args = new ArrayList<String>(2 + puts.size() + removals.size());
+        args.add(nodeId.toString());
+        args.add(Integer.toString(puts.size() / 3));
+        args.addAll(puts);
+        args.addAll(removals);
+        try {
+            FLUSH.execute(teamManager.getRedisSyncConnection(), new String[] { PLAYERS_KEY, NAMES_KEY },
+                    args.toArray(new String[0]));
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Couldn't write " + batch.size() + " directory changes, retrying them", ex);
+            // Queued again for the next batch, unless the player changed again meanwhile.
+            synchronized (pending) {
+                for (var entry : batch)
+                    pending.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        // Only once written, or other nodes could cache the old location again.
+        teamManager.getSyncPipeline().communicateClusterMessageAsync(TOPIC,
+                invalidation.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void onInvalidation(UUID from, byte[] body) {
+        cacheChanges.incrementAndGet();
+        for (var line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+            var space = line.indexOf(' ');
+            if (space < 0)
+                continue;
+            try {
+                cache.remove(UUID.fromString(line.substring(0, space)));
+            } catch (IllegalArgumentException ignored) {
+            }
+            nameCache.remove(line.substring(space + 1));
+        }
+    }
+
+    /**
+     * @param player The player id.
+     * @return A stage completed with where the player is, or null if they are
+     *         offline.
+     */
+    public CompletionStage<PlayerLocation> find(UUID player) {
+        var cached = cache.get(player);
+        if (cached != null)
+            return CompletableFuture.completedFuture(alive(cached));
+        var changes = cacheChanges.get();
+        return teamManager.getRedisAsyncConnection().hget(PLAYERS_KEY, player.toString()).thenApply(value -> {
+            var location = PlayerLocation.decode(player, value);
+            if (location != null)
+                cacheIfUnchanged(changes, player, location, null);
+            return alive(location);
+        });
+    }
+
+    /**
+     * @param name The player name, in any case.
+     * @return A stage completed with where the player is, or null if they are
+     *         offline.
+     */
+    public CompletionStage<PlayerLocation> find(String name) {
+        var lowerName = name.toLowerCase();
+        var cachedId = nameCache.get(lowerName);
+        if (cachedId != null && cache.containsKey(cachedId))
+            return find(cachedId);
+        var changes = cacheChanges.get();
+        return FIND_BY_NAME.<String, String, List<Object>>executeAsync(teamManager.getRedisAsyncConnection(),
+                new String[] { NAMES_KEY, PLAYERS_KEY }, lowerName).thenApply(result -> {
+                    if (result.size() < 2)
+                        return null;
+                    var player = UUID.fromString(result.get(0).toString());
+                    var location = PlayerLocation.decode(player, result.get(1).toString());
+                    if (location == null)
+                        return null;
+                    cacheIfUnchanged(changes, player, location, lowerName);
+                    return alive(location);
+                });
+    }
+
+    /**
+     * Caches a location read from redis, unless the cache changed since the read
+     * started. The check is repeated after caching, so a change that slipped in
+     * between takes the entry out again.
+     * 
+     * @param changes   The value of {@link #cacheChanges} when the read started.
+     * @param lowerName The lowercase name the player was found by, null if found
+     *                  by id.
+     */
+    private void cacheIfUnchanged(long changes, UUID player, PlayerLocation location, String lowerName) {
+        if (cacheChanges.get() != changes)
+            return;
+        cache.put(player, location);
+        if (lowerName != null)
+            nameCache.put(lowerName, player);
+        if (cacheChanges.get() != changes) {
+            cache.remove(player, location);
+            if (lowerName != null)
+                nameCache.remove(lowerName, player);
+        }
+    }
+
+    /**
+     * @return The amount of locations held in the local cache.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Players of nodes that stopped heartbeating are offline, whatever their
+     * entry says.
+     */
+    private PlayerLocation alive(PlayerLocation location) {
+        if (location == null || location.getNodeId().equals(nodeId))
+            return location;
+        var membership = teamManager.getMembership();
+        if (!membership.isRunning())
+            return location;
+        var node = membership.getNode(location.getNodeId());
+        return node != null && node.getState() != NodeState.DEAD ? location : null;
+    }
+
+    private static class Change {
+        private final String name;
+        private final PlayerLocation location;
+
+        Change(String name, PlayerLocation location) {
+            this.name = name;
+            this.location = location;
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package us.jcedeno.teams.cluster;
+
+import java.util.UUID;
+
+import lombok.Getter;
+
+/**
+ * Where a player is connected: the proxy node and the backend server.
+ * 
+ * @author jcedeno
+ */
+public class PlayerLocation {
+    private final @Getter UUID player;
+    private final @Getter String name;
+    private final @Getter UUID nodeId;
+    private final @Getter String server;
+
+    public PlayerLocation(UUID player, String name, UUID nodeId, String server) {
+        this.player = player;
+        this.name = name;
+        this.nodeId = nodeId;
+        this.server = server;
+    }
+
+    /**
+     * @return The location as stored in the directory.
+     */
+    String encode() {
+        return nodeId + "|" + server + "|" + name;
+    }
+
+    /**
+     * @param player The player.
+     * @param value  A location as stored in the directory.
+     * @return The location, or null if the value isn't one.
+     */
+    static PlayerLocation decode(UUID player, String value) {
+        if (value == null)
+            return null;
+        var parts = value.split("\\|", 3);
+        if (parts.length != 3)
+            return null;
+        try {
+            return new PlayerLocation(player, parts[2], UUID.fromString(parts[0]), parts[1]);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " in " + server + " through node " + nodeId.toString().split("-")[0];
+    }
+
+}
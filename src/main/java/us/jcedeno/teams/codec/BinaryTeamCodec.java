@@ -0,0 +1,235 @@
+package us.jcedeno.teams.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import us.jcedeno.teams.exceptions.CodecException;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.objects.events.PipelineChangeSet;
+import us.jcedeno.teams.objects.events.SendCommandToNodes;
+import us.jcedeno.teams.objects.events.TeamCreationUpdate;
+import us.jcedeno.teams.objects.events.TeamDeletion;
+
+/**
+ * A compact binary codec. Every payload starts with {@link #MARKER} followed by
+ * the format version, so it can be told apart from json and older or newer
+ * layouts can be detected. UUIDs are written as two longs and team members as a
+ * packed array of them.
+ * 
+ * @author jcedeno
+ */
+public class BinaryTeamCodec implements TeamCodec {
+    public static final String NAME = "binary";
+    /** First byte of every binary payload. Json payloads never start with it. */
+    public static final byte MARKER = 0;
+    /**
+     * Version of the layout written by this codec. Version 2 added the team
+     * version after the team id.
+     */
+    public static final byte FORMAT_VERSION = 2;
+    /** Flags used to mark the optional fields of a team. */
+    private static final int HAS_NAME = 1, HAS_POINTS = 1 << 1, HAS_LAST_OBTAINED_POINTS = 1 << 2,
+            HAS_MEMBERS = 1 << 3;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * @param data An encoded payload.
+     * @return True if the payload was written by a binary codec.
+     */
+    public static boolean isBinary(byte[] data) {
+        return data.length > 0 && data[0] == MARKER;
+    }
+
+    @Override
+    public byte[] encodeTeam(Team team) {
+        return write(out -> writeTeam(out, team));
+    }
+
+    @Override
+    public Team decodeTeam(byte[] data) {
+        return read(data, this::readTeam);
+    }
+
+    @Override
+    public byte[] encodeCreationUpdate(TeamCreationUpdate update) {
+        return write(out -> {
+            writeUUID(out, update.getFrom());
+            writeTeam(out, update.getTeam());
+        });
+    }
+
+    @Override
+    public TeamCreationUpdate decodeCreationUpdate(byte[] data) {
+        return read(data, (in, version) -> {
+            var from = readUUID(in);
+            return new TeamCreationUpdate(readTeam(in, version), from);
+        });
+    }
+
+    @Override
+    public byte[] encodeDeletion(TeamDeletion deletion) {
+        return write(out -> {
+            writeUUID(out, deletion.getFrom());
+            writeTeam(out, deletion.getTeam());
+        });
+    }
+
+    @Override
+    public TeamDeletion decodeDeletion(byte[] data) {
+        return read(data, (in, version) -> {
+            var from = readUUID(in);
+            return new TeamDeletion(readTeam(in, version), from);
+        });
+    }
+
+    @Override
+    public byte[] encodeChangeSet(PipelineChangeSet changeSet) {
+        return write(out -> {
+            writeUUID(out, changeSet.getFrom());
+            writeString(out, changeSet.getNewDataset());
+            // Trailing, so older readers just ignore it.
+            out.writeLong(changeSet.getGeneration());
+        });
+    }
+
+    @Override
+    public PipelineChangeSet decodeChangeSet(byte[] data) {
+        return read(data, (in, version) -> {
+            var from = readUUID(in);
+            var newDataset = readString(in);
+            return new PipelineChangeSet(newDataset, from, in.available() >= Long.BYTES ? in.readLong() : 0L);
+        });
+    }
+
+    @Override
+    public byte[] encodeCommand(SendCommandToNodes command) {
+        return write(out -> {
+            writeUUID(out, command.getFrom());
+            writeString(out, command.getCommand());
+        });
+    }
+
+    @Override
+    public SendCommandToNodes decodeCommand(byte[] data) {
+        return read(data, (in, version) -> {
+            var from = readUUID(in);
+            return new SendCommandToNodes(readString(in), from);
+        });
+    }
+
+    private void writeTeam(DataOutputStream out, Team team) throws IOException {
+        var flags = 0;
+        if (team.getTeamName() != null)
+            flags |= HAS_NAME;
+        if (team.getPoints() != 0)
+            flags |= HAS_POINTS;
+        if (team.getLastObtainedPoints() != null)
+            flags |= HAS_LAST_OBTAINED_POINTS;
+        if (team.getMembers() != null)
+            flags |= HAS_MEMBERS;
+        out.writeByte(flags);
+        writeUUID(out, team.getTeamID());
+        out.writeLong(team.getVersion());
+        if ((flags & HAS_NAME) != 0)
+            writeString(out, team.getTeamName());
+        if ((flags & HAS_POINTS) != 0)
+            out.writeInt(team.getPoints());
+        if ((flags & HAS_LAST_OBTAINED_POINTS) != 0)
+            out.writeLong(team.getLastObtainedPoints());
+        if ((flags & HAS_MEMBERS) != 0) {
+            var members = team.getMembers();
+            out.writeInt(members.size());
+            for (var member : members)
+                writeUUID(out, member);
+        }
+    }
+
+    private Team readTeam(DataInputStream in, int formatVersion) throws IOException {
+        var flags = in.readUnsignedByte();
+        var teamID = readUUID(in);
+        var version = formatVersion >= 2 ? in.readLong() : 0L;
+        var teamName = (flags & HAS_NAME) != 0 ? readString(in) : null;
+        Integer points = (flags & HAS_POINTS) != 0 ? in.readInt() : null;
+        var lastObtainedPoints = (flags & HAS_LAST_OBTAINED_POINTS) != 0 ? in.readLong() : null;
+        ArrayList<UUID> members = null;
+        if ((flags & HAS_MEMBERS) != 0) {
+            var size = in.readInt();
+            if (size < 0 || size > in.available() / 16)
+                throw CodecException.of("Invalid member count " + size);
+            members = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                members.add(readUUID(in));
+        }
+        return new Team(teamID, members, teamName, points, lastObtainedPoints, version != 0 ? version : null);
+    }
+
+    private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUUID(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var length = in.readInt();
+        if (length < 0 || length > in.available())
+            throw CodecException.of("Invalid string length " + length);
+        var bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] write(Writer writer) {
+        var bytes = new ByteArrayOutputStream(64);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(MARKER);
+            out.writeByte(FORMAT_VERSION);
+            writer.write(out);
+        } catch (IOException ex) {
+            throw new CodecException("Couldn't encode binary payload", ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private <T> T read(byte[] data, Reader<T> reader) {
+        if (data.length < 2 || !isBinary(data))
+            throw CodecException.of("Not a binary payload");
+        var version = data[1];
+        if (version < 1 || version > FORMAT_VERSION)
+            throw CodecException.of("Unsupported binary format version " + version);
+        try (var in = new DataInputStream(new ByteArrayInputStream(data, 2, data.length - 2))) {
+            return reader.read(in, version);
+        } catch (IOException ex) {
+            throw new CodecException("Truncated binary payload", ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInputStream in, int version) throws IOException;
+    }
+
+}
@@ -0,0 +1,118 @@
+package us.jcedeno.teams.codec;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import us.jcedeno.teams.exceptions.CodecException;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.objects.events.PipelineChangeSet;
+import us.jcedeno.teams.objects.events.SendCommandToNodes;
+import us.jcedeno.teams.objects.events.TeamCreationUpdate;
+import us.jcedeno.teams.objects.events.TeamDeletion;
+
+/**
+ * The default codec. Writes every object as UTF-8 json using Gson, which is the
+ * format used by nodes that predate codecs.
+ * 
+ * @author jcedeno
+ */
+public class JsonTeamCodec implements TeamCodec {
+    public static final String NAME = "json";
+    private static final Type MEMBERS = new TypeToken<List<UUID>>() {
+    }.getType();
+    /** Members are read into unmodifiable lists, as teams are immutable. */
+    private static Gson gson = new GsonBuilder()
+            .registerTypeAdapter(MEMBERS, (JsonDeserializer<List<UUID>>) (json, type, context) -> {
+                if (!json.isJsonArray())
+                    throw new JsonParseException("Members must be an array");
+                var array = json.getAsJsonArray();
+                var members = new ArrayList<UUID>(array.size());
+                try {
+                    for (var element : array)
+                        members.add(UUID.fromString(element.getAsString()));
+                } catch (RuntimeException ex) {
+                    throw new JsonParseException("Invalid member", ex);
+                }
+                return List.copyOf(members);
+            }).create();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encodeTeam(Team team) {
+        return encode(team);
+    }
+
+    @Override
+    public Team decodeTeam(byte[] data) {
+        return decode(data, Team.class);
+    }
+
+    @Override
+    public byte[] encodeCreationUpdate(TeamCreationUpdate update) {
+        return encode(update);
+    }
+
+    @Override
+    public TeamCreationUpdate decodeCreationUpdate(byte[] data) {
+        return decode(data, TeamCreationUpdate.class);
+    }
+
+    @Override
+    public byte[] encodeDeletion(TeamDeletion deletion) {
+        return encode(deletion);
+    }
+
+    @Override
+    public TeamDeletion decodeDeletion(byte[] data) {
+        return decode(data, TeamDeletion.class);
+    }
+
+    @Override
+    public byte[] encodeChangeSet(PipelineChangeSet changeSet) {
+        return encode(changeSet);
+    }
+
+    @Override
+    public PipelineChangeSet decodeChangeSet(byte[] data) {
+        return decode(data, PipelineChangeSet.class);
+    }
+
+    @Override
+    public byte[] encodeCommand(SendCommandToNodes command) {
+        return encode(command);
+    }
+
+    @Override
+    public SendCommandToNodes decodeCommand(byte[] data) {
+        return decode(data, SendCommandToNodes.class);
+    }
+
+    private byte[] encode(Object object) {
+        return gson.toJson(object).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private <T> T decode(byte[] data, Class<T> type) {
+        try {
+            var decoded = gson.fromJson(new String(data, StandardCharsets.UTF_8), type);
+            if (decoded == null)
+                throw CodecException.of("Empty " + type.getSimpleName());
+            return decoded;
+        } catch (JsonParseException ex) {
+            throw new CodecException("Malformed json " + type.getSimpleName(), ex);
+        }
+    }
+
+}
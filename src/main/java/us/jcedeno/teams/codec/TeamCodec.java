@@ -0,0 +1,43 @@
+package us.jcedeno.teams.codec;
+
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.objects.events.PipelineChangeSet;
+import us.jcedeno.teams.objects.events.SendCommandToNodes;
+import us.jcedeno.teams.objects.events.TeamCreationUpdate;
+import us.jcedeno.teams.objects.events.TeamDeletion;
+
+/**
+ * Encodes and decodes the objects that are stored in redis or sent to other
+ * nodes. Implementations must be thread safe. Decoding methods throw a
+ * {@link us.jcedeno.teams.exceptions.CodecException} if the data is malformed.
+ * 
+ * @author jcedeno
+ */
+public interface TeamCodec {
+
+    /**
+     * @return The name of the codec, as used in the configuration.
+     */
+    String getName();
+
+    byte[] encodeTeam(Team team);
+
+    Team decodeTeam(byte[] data);
+
+    byte[] encodeCreationUpdate(TeamCreationUpdate update);
+
+    TeamCreationUpdate decodeCreationUpdate(byte[] data);
+
+    byte[] encodeDeletion(TeamDeletion deletion);
+
+    TeamDeletion decodeDeletion(byte[] data);
+
+    byte[] encodeChangeSet(PipelineChangeSet changeSet);
+
+    PipelineChangeSet decodeChangeSet(byte[] data);
+
+    byte[] encodeCommand(SendCommandToNodes command);
+
+    SendCommandToNodes decodeCommand(byte[] data);
+
+}
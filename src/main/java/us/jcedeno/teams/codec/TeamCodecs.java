@@ -0,0 +1,128 @@
+package us.jcedeno.teams.codec;
+
+import us.jcedeno.teams.exceptions.CodecException;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.objects.events.PipelineChangeSet;
+import us.jcedeno.teams.objects.events.SendCommandToNodes;
+import us.jcedeno.teams.objects.events.TeamCreationUpdate;
+import us.jcedeno.teams.objects.events.TeamDeletion;
+
+/**
+ * Factory of the available {@link TeamCodec}s.
+ * 
+ * @author jcedeno
+ */
+public final class TeamCodecs {
+    private static final JsonTeamCodec JSON = new JsonTeamCodec();
+    private static final BinaryTeamCodec BINARY = new BinaryTeamCodec();
+
+    private TeamCodecs() {
+    }
+
+    /**
+     * @return The json codec, the default one.
+     */
+    public static TeamCodec json() {
+        return JSON;
+    }
+
+    /**
+     * @return The compact binary codec.
+     */
+    public static TeamCodec binary() {
+        return BINARY;
+    }
+
+    /**
+     * @param name The name of a codec, case insensitive.
+     * @return The codec with the given name.
+     * @throws CodecException If there's no codec with that name.
+     */
+    public static TeamCodec byName(String name) {
+        if (JsonTeamCodec.NAME.equalsIgnoreCase(name))
+            return JSON;
+        if (BinaryTeamCodec.NAME.equalsIgnoreCase(name))
+            return BINARY;
+        throw CodecException.of("Unknown codec " + name);
+    }
+
+    /**
+     * Wraps a codec so that it keeps encoding with it but decodes payloads written
+     * by any known codec, detected from their first byte. This is what allows
+     * nodes configured with different codecs to coexist during a rolling upgrade.
+     * 
+     * @param preferred The codec used to encode.
+     * @return The wrapped codec.
+     */
+    public static TeamCodec versioned(TeamCodec preferred) {
+        return new VersionedTeamCodec(preferred);
+    }
+
+    private static class VersionedTeamCodec implements TeamCodec {
+        private final TeamCodec preferred;
+
+        private VersionedTeamCodec(TeamCodec preferred) {
+            this.preferred = preferred;
+        }
+
+        private TeamCodec codecFor(byte[] data) {
+            return BinaryTeamCodec.isBinary(data) ? BINARY : JSON;
+        }
+
+        @Override
+        public String getName() {
+            return preferred.getName();
+        }
+
+        @Override
+        public byte[] encodeTeam(Team team) {
+            return preferred.encodeTeam(team);
+        }
+
+        @Override
+        public Team decodeTeam(byte[] data) {
+            return codecFor(data).decodeTeam(data);
+        }
+
+        @Override
+        public byte[] encodeCreationUpdate(TeamCreationUpdate update) {
+            return preferred.encodeCreationUpdate(update);
+        }
+
+        @Override
+        public TeamCreationUpdate decodeCreationUpdate(byte[] data) {
+            return codecFor(data).decodeCreationUpdate(data);
+        }
+
+        @Override
+        public byte[] encodeDeletion(TeamDeletion deletion) {
+            return preferred.encodeDeletion(deletion);
+        }
+
+        @Override
+        public TeamDeletion decodeDeletion(byte[] data) {
+            return codecFor(data).decodeDeletion(data);
+        }
+
+        @Override
+        public byte[] encodeChangeSet(PipelineChangeSet changeSet) {
+            return preferred.encodeChangeSet(changeSet);
+        }
+
+        @Override
+        public PipelineChangeSet decodeChangeSet(byte[] data) {
+            return codecFor(data).decodeChangeSet(data);
+        }
+
+        @Override
+        public byte[] encodeCommand(SendCommandToNodes command) {
+            return preferred.encodeCommand(command);
+        }
+
+        @Override
+        public SendCommandToNodes decodeCommand(byte[] data) {
+            return codecFor(data).decodeCommand(data);
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package us.jcedeno.teams.exceptions;
+
+/**
+ * Exception thrown when a team or an event can't be encoded or decoded.
+ * 
+ * @author jcedeno
+ */
+public class CodecException extends RuntimeException {
+
+    /**
+     * @param message The message to be displayed.
+     */
+    public CodecException(String message) {
+        super(message);
+    }
+
+    /**
+     * @param message The message to be displayed.
+     * @param cause   The underlying error.
+     */
+    public CodecException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * Static constructor for CodecException.
+     * 
+     * @param message The message to be displayed in the exception.
+     * @return a new CodecException
+     */
+    public static CodecException of(String message) {
+        return new CodecException(message);
+    }
+}
@@ -0,0 +1,174 @@
+package us.jcedeno.teams.leaderboard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+
+import io.lettuce.core.ScriptOutputType;
+import us.jcedeno.teams.TeamListener;
+import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.storage.LuaScript;
+
+/**
+ * Live ranking of the teams of a {@link TeamManager}. It listens to every
+ * change of the teams in ram and keeps them in a {@link RankedTree}, so the top
+ * teams, the rank of a team and the teams around it are all found in O(log n)
+ * without ever sorting the whole map. Teams with the same points are ranked by
+ * who reached them first.
+ * <p>
+ * The points are also mirrored to a redis sorted set per dataset (see
+ * {@link #mirrorKey(String)}), scored by points and kept up to date by the
+ * scripts that write the teams, for anything outside the proxies that needs
+ * the standings.
+ * 
+ * @author jcedeno
+ */
+public class Leaderboard implements TeamListener {
+
+    /**
+     * Rebuilds the mirror of a dataset. KEYS: mirror. ARGV: 1 to only rebuild a
+     * missing mirror, then score and member pairs. Returns 1 if it was rebuilt.
+     */
+    private static final LuaScript REBUILD = new LuaScript(String.join("\n",
+            "if ARGV[1] == '1' and redis.call('EXISTS', KEYS[1]) == 1 then return 0 end",
+            "redis.call('DEL', KEYS[1])",
+            "for i = 2, #ARGV, 2 do",
+            "  redis.call('ZADD', KEYS[1], ARGV[i], ARGV[i + 1])",
+            "end",
+            "return 1"), ScriptOutputType.INTEGER);
+
+    private final TeamManager teamManager;
+    private final RankedTree<LeaderboardEntry> ranking = new RankedTree<>(LeaderboardEntry.RANKING);
+    private final Map<UUID, LeaderboardEntry> entries = new HashMap<>();
+
+    /**
+     * Creates a leaderboard and starts listening to the teams of the manager.
+     * 
+     * @param teamManager The team manager whose teams are ranked.
+     */
+    public Leaderboard(TeamManager teamManager) {
+        this.teamManager = teamManager;
+        teamManager.addTeamListener(this);
+    }
+
+    @Override
+    public synchronized void onTeamChanged(Team old, Team current) {
+        if (current == null) {
+            var removed = entries.remove(old.getTeamID());
+            if (removed != null)
+                ranking.remove(removed);
+            return;
+        }
+        var entry = LeaderboardEntry.of(current);
+        var previous = entries.get(entry.getTeamId());
+        if (entry.sameAs(previous))
+            return;
+        entries.put(entry.getTeamId(), entry);
+        if (previous != null)
+            ranking.remove(previous);
+        ranking.add(entry);
+    }
+
+    @Override
+    public synchronized void onTeamsCleared() {
+        entries.clear();
+        ranking.clear();
+    }
+
+    /**
+     * @param count The max amount of teams to return.
+     * @return The best teams, best first.
+     */
+    public synchronized List<LeaderboardEntry> top(int count) {
+        return range(0, count);
+    }
+
+    /**
+     * @param teamId The id of a team.
+     * @return The position of the team, starting at 1, or -1 if it's not ranked.
+     */
+    public synchronized int rankOf(UUID teamId) {
+        var entry = entries.get(teamId);
+        return entry != null ? ranking.rank(entry) + 1 : -1;
+    }
+
+    /**
+     * @param teamId The id of a team.
+     * @return The standing of the team, or null if it's not ranked.
+     */
+    public synchronized LeaderboardEntry entryOf(UUID teamId) {
+        return entries.get(teamId);
+    }
+
+    /**
+     * @param teamId The id of a team.
+     * @param radius How many teams to include above and below it.
+     * @return The team with its neighbours, best first, or an empty list if the
+     *         team isn't ranked.
+     */
+    public synchronized List<LeaderboardEntry> around(UUID teamId, int radius) {
+        var entry = entries.get(teamId);
+        if (entry == null)
+            return List.of();
+        var rank = ranking.rank(entry);
+        return range(Math.max(0, rank - radius), rank + radius + 1 - Math.max(0, rank - radius));
+    }
+
+    /**
+     * @return The amount of ranked teams.
+     */
+    public synchronized int size() {
+        return ranking.size();
+    }
+
+    private List<LeaderboardEntry> range(int from, int count) {
+        var to = Math.min(ranking.size(), from + Math.max(0, count));
+        var result = new ArrayList<LeaderboardEntry>(Math.max(0, to - from));
+        for (int i = from; i < to; i++)
+            result.add(ranking.get(i));
+        return result;
+    }
+
+    /**
+     * Rewrites the redis mirror of the current dataset from the teams in ram.
+     * Needed after the dataset is restored from a snapshot, or for datasets
+     * written before the mirror existed.
+     * 
+     * @param onlyIfMissing If true the mirror is only written if it doesn't
+     *                      exist.
+     * @return A stage completed with true if the mirror was written.
+     */
+    public CompletionStage<Boolean> rebuildMirrorAsync(boolean onlyIfMissing) {
+        List<LeaderboardEntry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.values());
+        }
+        var args = new byte[1 + snapshot.size() * 2][];
+        args[0] = bytes(onlyIfMissing ? "1" : "0");
+        for (int i = 0; i < snapshot.size(); i++) {
+            args[1 + i * 2] = bytes(Integer.toString(snapshot.get(i).getPoints()));
+            args[2 + i * 2] = bytes(snapshot.get(i).getTeamId().toString());
+        }
+        CompletionStage<Long> rebuilt = REBUILD.executeAsync(teamManager.getRedisBinaryAsyncConnection(),
+                new String[] { mirrorKey(teamManager.getDataset()) }, args);
+        return rebuilt.thenApply(result -> result == 1);
+    }
+
+    /**
+     * @param dataset The name of a dataset.
+     * @return The key of the sorted set mirroring the points of its teams.
+     */
+    public static String mirrorKey(String dataset) {
+        return "leaderboard:" + dataset;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,63 @@
+package us.jcedeno.teams.leaderboard;
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.UUID;
+
+import lombok.Getter;
+import us.jcedeno.teams.objects.Team;
+
+/**
+ * The standing of a team in a {@link Leaderboard}. Immutable, so it can be
+ * handed out while the team keeps changing.
+ * 
+ * @author jcedeno
+ */
+public class LeaderboardEntry {
+    /**
+     * Ranking order: more points first, then whoever reached them first, then the
+     * team id so no two teams ever tie.
+     */
+    static final Comparator<LeaderboardEntry> RANKING = Comparator
+            .comparingInt(LeaderboardEntry::getPoints).reversed()
+            .thenComparingLong(LeaderboardEntry::getLastObtainedPoints)
+            .thenComparing(LeaderboardEntry::getTeamId);
+
+    private final @Getter UUID teamId;
+    private final @Getter String teamName;
+    private final @Getter int points;
+    /** Last time the team obtained points, {@link Long#MAX_VALUE} if never. */
+    private final @Getter long lastObtainedPoints;
+
+    LeaderboardEntry(UUID teamId, String teamName, int points, long lastObtainedPoints) {
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.points = points;
+        this.lastObtainedPoints = lastObtainedPoints;
+    }
+
+    /**
+     * @param team A team.
+     * @return The current standing of the team.
+     */
+    static LeaderboardEntry of(Team team) {
+        var lastObtained = team.getLastObtainedPoints();
+        return new LeaderboardEntry(team.getTeamID(), team.getTeamName(), team.getPoints(),
+                lastObtained != null ? lastObtained : Long.MAX_VALUE);
+    }
+
+    /**
+     * @param other Another entry of the same team.
+     * @return True if both entries rank the same and show the same name.
+     */
+    boolean sameAs(LeaderboardEntry other) {
+        return other != null && points == other.points && lastObtainedPoints == other.lastObtainedPoints
+                && Objects.equals(teamName, other.teamName);
+    }
+
+    @Override
+    public String toString() {
+        return "LeaderboardEntry [teamId=" + teamId + ", teamName=" + teamName + ", points=" + points + "]";
+    }
+
+}
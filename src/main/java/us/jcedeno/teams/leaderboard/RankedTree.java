@@ -0,0 +1,149 @@
+package us.jcedeno.teams.leaderboard;
+
+import java.util.Comparator;
+import java.util.SplittableRandom;
+
+/**
+ * An order statistic tree, implemented as a treap whose nodes know the size of
+ * their subtree. Adding, removing, finding the rank of a value and finding the
+ * value at a rank are all O(log n). Values must be unique under the comparator.
+ * <p>
+ * Not thread safe.
+ * 
+ * @author jcedeno
+ */
+class RankedTree<T> {
+    private final Comparator<? super T> comparator;
+    private final SplittableRandom random = new SplittableRandom();
+    private Node<T> root;
+
+    RankedTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * @param value The value to add. It must not already be in the tree.
+     */
+    void add(T value) {
+        var split = split(root, value, false);
+        root = merge(merge(split[0], new Node<>(value, random.nextInt())), split[1]);
+    }
+
+    /**
+     * @param value The value to remove.
+     * @return True if the value was in the tree.
+     */
+    boolean remove(T value) {
+        var lower = split(root, value, false);
+        var upper = split(lower[1], value, true);
+        root = merge(lower[0], upper[1]);
+        return upper[0] != null;
+    }
+
+    /**
+     * @param value A value.
+     * @return The amount of values that come before it.
+     */
+    int rank(T value) {
+        var rank = 0;
+        var node = root;
+        while (node != null) {
+            var comparison = comparator.compare(value, node.value);
+            if (comparison <= 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * @param index A rank, starting at 0.
+     * @return The value at the rank, or null if it's out of bounds.
+     */
+    T get(int index) {
+        var node = root;
+        while (node != null) {
+            var leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    /**
+     * @param node      The root of a subtree.
+     * @param value     The value to split by.
+     * @param inclusive Whether the value itself goes to the left side.
+     * @return The subtree with the values before the value, and the one with the
+     *         values after it.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<T>[] split(Node<T> node, T value, boolean inclusive) {
+        if (node == null)
+            return new Node[2];
+        var comparison = comparator.compare(node.value, value);
+        if (comparison < 0 || (inclusive && comparison == 0)) {
+            var split = split(node.right, value, inclusive);
+            node.right = split[0];
+            split[0] = node.update();
+            return split;
+        }
+        var split = split(node.left, value, inclusive);
+        node.left = split[1];
+        split[1] = node.update();
+        return split;
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return left.update();
+        }
+        right.left = merge(left, right.left);
+        return right.update();
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static class Node<T> {
+        private final T value;
+        private final int priority;
+        private int size = 1;
+        private Node<T> left;
+        private Node<T> right;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        Node<T> update() {
+            size = size(left) + size(right) + 1;
+            return this;
+        }
+    }
+
+}
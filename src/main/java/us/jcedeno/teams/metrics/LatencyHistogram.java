@@ -0,0 +1,84 @@
+package us.jcedeno.teams.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies with power of two buckets, cheap enough
+ * to record every redis command and every event. Percentiles are the upper
+ * bound of the bucket they fall in, so they are at most twice the real value.
+ * 
+ * @author jcedeno
+ */
+public class LatencyHistogram {
+    /** Bucket i counts the values below 2^i, the last one everything else. */
+    private static final int BUCKETS = 48;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * @param value A latency, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+        count.increment();
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return The amount of values recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The mean of the values recorded, 0 if there are none.
+     */
+    public double getMean() {
+        var n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * @return The highest value recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile A percentile between 0 and 100.
+     * @return The upper bound of the values below that percentile, 0 if there
+     *         are none.
+     */
+    public long getPercentile(double percentile) {
+        var n = count.sum();
+        if (n == 0)
+            return 0;
+        var rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= Math.max(1, rank))
+                return Math.min(max.get(), i == 0 ? 0 : (1L << i) - 1);
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " mean=" + Math.round(getMean()) + " p50=" + getPercentile(50) + " p99="
+                + getPercentile(99) + " max=" + getMax();
+    }
+
+}
@@ -0,0 +1,197 @@
+package us.jcedeno.teams.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import io.lettuce.core.metrics.CommandLatencyRecorder;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import lombok.Setter;
+import us.jcedeno.teams.sync.EventType;
+
+/**
+ * Counters and latency histograms of the redis commands, recieved events and
+ * dataset loads of a node. Redis latencies are recorded by lettuce itself for
+ * every command, events by the sync pipeline. They can be read through the
+ * getters or through JMX once {@link #register(String)} is called.
+ * 
+ * @author jcedeno
+ */
+public class SyncMetrics implements CommandLatencyRecorder, SyncMetricsMXBean {
+    private final Map<String, LatencyHistogram> redisCommands = new ConcurrentHashMap<>();
+    private final Map<EventType, LongAdder> events = new ConcurrentHashMap<>();
+    private final LongAdder selfDropped = new LongAdder();
+    private final LongAdder malformedDropped = new LongAdder();
+    /** Publish to apply lag in millis. */
+    private final LatencyHistogram applyLag = new LatencyHistogram();
+    /** Dataset load durations in millis. */
+    private final LatencyHistogram datasetLoads = new LatencyHistogram();
+    private @Setter IntSupplier queueDepth = () -> 0;
+    private final Logger logger = Logger.getLogger("sync-metrics");
+    private ObjectName objectName;
+
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType,
+            long firstResponseLatency, long completionLatency) {
+        redisCommands.computeIfAbsent(commandType.name(), name -> new LatencyHistogram())
+                .record(TimeUnit.NANOSECONDS.toMicros(completionLatency));
+    }
+
+    /**
+     * @param type The type of the recieved event.
+     */
+    public void eventRecieved(EventType type) {
+        events.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Counts a message sent by this node that came back to it.
+     */
+    public void selfMessageDropped() {
+        selfDropped.increment();
+    }
+
+    /**
+     * Counts a message that couldn't be read.
+     */
+    public void malformedMessageDropped() {
+        malformedDropped.increment();
+    }
+
+    /**
+     * @param sentAt When the applied event was published, in epoch millis.
+     */
+    public void eventApplied(long sentAt) {
+        if (sentAt > 0)
+            applyLag.record(System.currentTimeMillis() - sentAt);
+    }
+
+    /**
+     * @param millis How long a dataset took to load.
+     */
+    public void datasetLoaded(long millis) {
+        datasetLoads.record(millis);
+    }
+
+    /**
+     * @return The latencies of every redis command in micros, by command.
+     */
+    public Map<String, LatencyHistogram> getRedisCommands() {
+        return new TreeMap<>(redisCommands);
+    }
+
+    /**
+     * @return The publish to apply lag of the events, in millis.
+     */
+    public LatencyHistogram getApplyLag() {
+        return applyLag;
+    }
+
+    /**
+     * @return The durations of the dataset loads, in millis.
+     */
+    public LatencyHistogram getDatasetLoadTimes() {
+        return datasetLoads;
+    }
+
+    @Override
+    public Map<String, Long> getRedisCommandCounts() {
+        var counts = new TreeMap<String, Long>();
+        redisCommands.forEach((command, histogram) -> counts.put(command, histogram.getCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRedisCommandP99Micros() {
+        var p99 = new TreeMap<String, Long>();
+        redisCommands.forEach((command, histogram) -> p99.put(command, histogram.getPercentile(99)));
+        return p99;
+    }
+
+    @Override
+    public Map<String, Long> getEventCounts() {
+        var counts = new TreeMap<String, Long>();
+        events.forEach((type, count) -> counts.put(type.getChannel() + "/" + type, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public long getSelfMessagesDropped() {
+        return selfDropped.sum();
+    }
+
+    @Override
+    public long getMalformedMessagesDropped() {
+        return malformedDropped.sum();
+    }
+
+    @Override
+    public long getApplyLagP50Millis() {
+        return applyLag.getPercentile(50);
+    }
+
+    @Override
+    public long getApplyLagP99Millis() {
+        return applyLag.getPercentile(99);
+    }
+
+    @Override
+    public long getApplyLagMaxMillis() {
+        return applyLag.getMax();
+    }
+
+    @Override
+    public int getSyncQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public long getDatasetLoads() {
+        return datasetLoads.getCount();
+    }
+
+    @Override
+    public long getDatasetLoadP99Millis() {
+        return datasetLoads.getPercentile(99);
+    }
+
+    /**
+     * Exposes the metrics through the platform MBean server.
+     * 
+     * @param node The name of the node, part of the object name.
+     */
+    public synchronized void register(String node) {
+        try {
+            objectName = new ObjectName("us.jcedeno.dedsafio:type=SyncMetrics,node=" + ObjectName.quote(node));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Couldn't expose the sync metrics through JMX", ex);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Stops exposing the metrics through JMX.
+     */
+    public synchronized void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            logger.log(Level.FINE, "Couldn't unregister the sync metrics", ex);
+        }
+        objectName = null;
+    }
+
+}
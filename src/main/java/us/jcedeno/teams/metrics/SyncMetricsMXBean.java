@@ -0,0 +1,68 @@
+package us.jcedeno.teams.metrics;
+
+import java.util.Map;
+
+/**
+ * The {@link SyncMetrics} of a node as exposed through JMX.
+ * 
+ * @author jcedeno
+ */
+public interface SyncMetricsMXBean {
+
+    /**
+     * @return How many times every redis command was sent, by command.
+     */
+    Map<String, Long> getRedisCommandCounts();
+
+    /**
+     * @return The 99th percentile latency of every redis command in micros.
+     */
+    Map<String, Long> getRedisCommandP99Micros();
+
+    /**
+     * @return The amount of events recieved by channel and type.
+     */
+    Map<String, Long> getEventCounts();
+
+    /**
+     * @return The amount of messages sent by this node that came back to it.
+     */
+    long getSelfMessagesDropped();
+
+    /**
+     * @return The amount of messages dropped because they couldn't be read.
+     */
+    long getMalformedMessagesDropped();
+
+    /**
+     * @return The median time from an event being published to it being applied.
+     */
+    long getApplyLagP50Millis();
+
+    /**
+     * @return The 99th percentile time from an event being published to it being
+     *         applied.
+     */
+    long getApplyLagP99Millis();
+
+    /**
+     * @return The longest time from an event being published to it being applied.
+     */
+    long getApplyLagMaxMillis();
+
+    /**
+     * @return The amount of events waiting to be applied.
+     */
+    int getSyncQueueDepth();
+
+    /**
+     * @return The amount of dataset loads.
+     */
+    long getDatasetLoads();
+
+    /**
+     * @return The 99th percentile duration of the dataset loads.
+     */
+    long getDatasetLoadP99Millis();
+
+}
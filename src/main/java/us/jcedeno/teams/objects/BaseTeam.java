@@ -1,18 +1,18 @@
 package us.jcedeno.teams.objects;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 /**
- * The most basic representation of a team using plain java.
+ * The most basic representation of a team using plain java. Teams are
+ * immutable, the list of members can't be modified either.
  * 
  * @author jcedeno
  */
 public class BaseTeam {
-    protected UUID teamID;
-    protected List<UUID> members;
-    protected String teamName;
+    protected final UUID teamID;
+    protected final List<UUID> members;
+    protected final String teamName;
 
     /**
      * @param teamID   A provided team ID.
@@ -23,7 +23,7 @@ public class BaseTeam {
      */
     public BaseTeam(UUID teamID, List<UUID> members, String teamName) {
         this.teamID = teamID;
-        this.members = members;
+        this.members = members != null ? List.copyOf(members) : null;
         this.teamName = teamName;
     }
 
@@ -37,7 +37,7 @@ public class BaseTeam {
      */
     public BaseTeam(UUID teamID, String teamName, UUID... uuid) {
         this.teamID = teamID;
-        this.members = Arrays.asList(uuid);
+        this.members = List.of(uuid);
         this.teamName = teamName;
     }
 
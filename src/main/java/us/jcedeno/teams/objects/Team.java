@@ -7,15 +7,37 @@ import java.util.UUID;
  * Team intended to have more information then just the basics of a team, but
  * also scores and many more variables that are required in the different
  * applications of teams in different gamemodes.
+ * <p>
+ * Teams are immutable snapshots, so they can be read and encoded from any
+ * thread. Changes are made by building a new team with the {@code with}
+ * methods and handing it to the {@link us.jcedeno.teams.TeamManager}.
  * 
  * @author jcedeno
  */
 public class Team extends BaseTeam {
-    protected Integer points;
-    protected Long lastObtainedPoints;
+    protected final Integer points;
+    protected final Long lastObtainedPoints;
+    protected final Long version;
 
     public Team(UUID teamID, List<UUID> members, String teamName) {
+        this(teamID, members, teamName, null, null, null);
+    }
+
+    /**
+     * @param teamID             A provided team ID.
+     * @param members            A list of ids of the members of a team.
+     * @param teamName           A provided name for a team.
+     * @param points             The points of the team, may be null.
+     * @param lastObtainedPoints The last milliseconds the points were obtained,
+     *                           may be null.
+     * @param version            The version assigned by redis, may be null.
+     */
+    public Team(UUID teamID, List<UUID> members, String teamName, Integer points, Long lastObtainedPoints,
+            Long version) {
         super(teamID, members, teamName);
+        this.points = points;
+        this.lastObtainedPoints = lastObtainedPoints;
+        this.version = version;
     }
 
     /**
@@ -27,11 +49,22 @@ public class Team extends BaseTeam {
     }
 
     /**
-     * @return the points
-     * @param lastObtainedPoints The last milliseconds the points were obtained
+     * @return The version of the team, incremented by redis every time the team is
+     *         written. 0 if the team has never been written.
      */
-    public void setLastObtainedPoints(Long lastObtainedPoints) {
-        this.lastObtainedPoints = lastObtainedPoints;
+    public long getVersion() {
+        return version != null ? version : 0L;
+    }
+
+    /**
+     * <b>Note</b>: Versions are assigned by redis, this is only intended to be used
+     * when reading or writing a team to the backend.
+     * 
+     * @param version The version of the team.
+     * @return A copy of this team with the given version.
+     */
+    public Team withVersion(long version) {
+        return new Team(teamID, members, teamName, points, lastObtainedPoints, version);
     }
 
     /*
@@ -42,34 +75,34 @@ public class Team extends BaseTeam {
     }
 
     /**
-     * Setter for the points of the team.
-     * 
      * <b>Note</b>: This won't update the database. Intended to be used in pair with
      * other functions that actually do update the database.
      * 
-     * @param points
+     * @param newPoints  The new points of the team.
+     * @param obtainedAt The milliseconds the points were obtained.
+     * @return A copy of this team with the given points.
      */
-    public void setPoints(Integer newPoints) {
-        this.points = newPoints;
+    public Team withPoints(int newPoints, long obtainedAt) {
+        return new Team(teamID, members, teamName, newPoints, obtainedAt, version);
     }
 
-    public void addPoints(Integer extraPoints) {
-        if (points != null) {
-            points += extraPoints;
-        } else {
-            points = extraPoints;
-        }
+    /**
+     * @param extraPoints The points to add to the current ones.
+     * @param obtainedAt  The milliseconds the points were obtained.
+     * @return A copy of this team with the points added.
+     */
+    public Team withAddedPoints(int extraPoints, long obtainedAt) {
+        return withPoints(getPoints() + extraPoints, obtainedAt);
     }
 
     public boolean isMember(UUID uuid) {
-        return members.stream().anyMatch(member -> member.getMostSignificantBits() == uuid.getMostSignificantBits());
+        return members != null && members.contains(uuid);
     }
-    
 
     @Override
     public String toString() {
-        return "Team [points=" + points + ", lastObtainedPoints=" + lastObtainedPoints + ", teamID=" + teamID
-                + ", members=" + members + ", teamName=" + teamName + "]";
+        return "Team [points=" + points + ", lastObtainedPoints=" + lastObtainedPoints + ", version=" + version
+                + ", teamID=" + teamID + ", members=" + members + ", teamName=" + teamName + "]";
     }
 
-}
\ No newline at end of file
+}
@@ -9,10 +9,22 @@ import java.util.UUID;
 public class PipelineChangeSet {
     private String newDataset;
     private UUID from;
+    private long generation;
 
     public PipelineChangeSet(String newDataset, UUID from) {
+        this(newDataset, from, 0);
+    }
+
+    /**
+     * @param newDataset The name of the dataset to be used.
+     * @param from       The nodeId that generated the request.
+     * @param generation The generation of the dataset after the change, 0 if
+     *                   unknown.
+     */
+    public PipelineChangeSet(String newDataset, UUID from, long generation) {
         this.newDataset = newDataset;
         this.from = from;
+        this.generation = generation;
     }
 
     /**
@@ -29,4 +41,11 @@ public class PipelineChangeSet {
         return from;
     }
 
+    /**
+     * @return The generation of the dataset after the change, 0 if unknown.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
 }
@@ -0,0 +1,212 @@
+package us.jcedeno.teams.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import io.lettuce.core.api.StatefulRedisConnection;
+import lombok.Getter;
+import us.jcedeno.teams.codec.TeamCodec;
+import us.jcedeno.teams.objects.Team;
+
+/**
+ * Pulls a dataset from redis in bounded pages instead of a single HGETALL.
+ * Every page is read with {@link TeamScripts#SCAN_PAGE} and decoded in parallel
+ * on a fork/join pool while the next page is being fetched. Teams are handed to
+ * the sink as soon as they are decoded, so at most two pages are ever held in
+ * memory.
+ * <p>
+ * The sink is called from several threads at once.
+ * 
+ * @author jcedeno
+ */
+public class DatasetLoader {
+    /** Default amount of teams requested per page. */
+    public static final int DEFAULT_PAGE_SIZE = 512;
+    /** Below this many teams a page is decoded on a single thread. */
+    private static final int DECODE_THRESHOLD = 64;
+    private static final byte[] FIRST_CURSOR = "0".getBytes(StandardCharsets.UTF_8);
+    private final StatefulRedisConnection<String, byte[]> connection;
+    private final TeamCodec codec;
+    private final ForkJoinPool pool;
+    private final byte[] pageSize;
+
+    /**
+     * @param connection The connection used to read the dataset.
+     * @param codec      The codec used to decode the teams.
+     * @param pool       The pool the teams are decoded on.
+     * @param pageSize   The amount of teams requested per page. Redis may return
+     *                   a few more or less.
+     */
+    public DatasetLoader(StatefulRedisConnection<String, byte[]> connection, TeamCodec codec, ForkJoinPool pool,
+            int pageSize) {
+        this.connection = connection;
+        this.codec = codec;
+        this.pool = pool;
+        this.pageSize = Integer.toString(pageSize).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param connection The connection used to read the dataset.
+     * @param codec      The codec used to decode the teams.
+     */
+    public DatasetLoader(StatefulRedisConnection<String, byte[]> connection, TeamCodec codec) {
+        this(connection, codec, ForkJoinPool.commonPool(), DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Loads a dataset, blocking the calling thread until every team has been
+     * handed to the sink.
+     * 
+     * @param set  The name of the dataset.
+     * @param sink Consumer of the loaded teams.
+     * @return A report of the load.
+     */
+    public LoadReport load(String set, Consumer<Team> sink) {
+        var start = System.nanoTime();
+        var keys = keys(set);
+        var count = new AtomicInteger();
+        var pages = 0;
+        var cursor = FIRST_CURSOR;
+        ForkJoinTask<?> decoding = null;
+        do {
+            List<Object> page = TeamScripts.SCAN_PAGE.execute(connection.sync(), keys, cursor, pageSize);
+            cursor = (byte[]) page.get(0);
+            // Wait for the previous page before queueing this one, to bound memory.
+            if (decoding != null)
+                decoding.join();
+            decoding = pool.submit(decodeTask(page, sink, count));
+            pages++;
+        } while (!isLast(cursor));
+        decoding.join();
+        return new LoadReport(set, count.get(), pages, System.nanoTime() - start);
+    }
+
+    /**
+     * Non-blocking version of {@link #load(String, Consumer)}.
+     * 
+     * @param set  The name of the dataset.
+     * @param sink Consumer of the loaded teams.
+     * @return A stage completed with a report of the load once every team has
+     *         been handed to the sink.
+     */
+    public CompletionStage<LoadReport> loadAsync(String set, Consumer<Team> sink) {
+        var start = System.nanoTime();
+        var count = new AtomicInteger();
+        var pages = new AtomicInteger();
+        return loadPageAsync(keys(set), FIRST_CURSOR, sink, count, pages, CompletableFuture.completedFuture(null))
+                .thenApply(ignored -> new LoadReport(set, count.get(), pages.get(), System.nanoTime() - start));
+    }
+
+    private CompletionStage<Void> loadPageAsync(String[] keys, byte[] cursor, Consumer<Team> sink,
+            AtomicInteger count, AtomicInteger pages, CompletableFuture<Void> previous) {
+        CompletionStage<List<Object>> fetch = TeamScripts.SCAN_PAGE.executeAsync(connection.async(), keys, cursor,
+                pageSize);
+        return fetch.thenCompose(page -> {
+            pages.incrementAndGet();
+            var next = (byte[]) page.get(0);
+            var decoding = previous.thenRunAsync(() -> decodeTask(page, sink, count).invoke(), pool);
+            if (isLast(next))
+                return decoding;
+            // The next page is fetched while this one decodes, but only once the previous one is done.
+            return previous.thenCompose(ignored -> loadPageAsync(keys, next, sink, count, pages, decoding));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private DecodeTask decodeTask(List<Object> page, Consumer<Team> sink, AtomicInteger count) {
+        var entries = (List<byte[]>) page.get(1);
+        return new DecodeTask(entries, 0, entries.size() / 2, sink, count);
+    }
+
+    private static String[] keys(String set) {
+        return new String[] { set, TeamScripts.versionsKey(set) };
+    }
+
+    private static boolean isLast(byte[] cursor) {
+        return cursor.length == 1 && cursor[0] == '0';
+    }
+
+    /**
+     * @param version The version read from the versions hash, may be null or
+     *                empty if the team has none.
+     * @return The version, or -1 if there is none.
+     */
+    public static long parseVersion(byte[] version) {
+        if (version == null || version.length == 0)
+            return -1;
+        return Long.parseLong(new String(version, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a range of team and version pairs, splitting it in halves while it
+     * is larger than {@link #DECODE_THRESHOLD}.
+     */
+    private class DecodeTask extends RecursiveAction {
+        private final List<byte[]> entries;
+        private final int from;
+        private final int to;
+        private final Consumer<Team> sink;
+        private final AtomicInteger count;
+
+        DecodeTask(List<byte[]> entries, int from, int to, Consumer<Team> sink, AtomicInteger count) {
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+            this.sink = sink;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= DECODE_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    var team = codec.decodeTeam(entries.get(i * 2));
+                    var version = parseVersion(entries.get(i * 2 + 1));
+                    sink.accept(version >= 0 ? team.withVersion(version) : team);
+                }
+                count.addAndGet(to - from);
+                return;
+            }
+            var middle = (from + to) >>> 1;
+            invokeAll(new DecodeTask(entries, from, middle, sink, count),
+                    new DecodeTask(entries, middle, to, sink, count));
+        }
+    }
+
+    /**
+     * Summary of a finished load.
+     */
+    public static class LoadReport {
+        private final @Getter String dataset;
+        private final @Getter int teams;
+        private final @Getter int pages;
+        private final @Getter long nanos;
+
+        LoadReport(String dataset, int teams, int pages, long nanos) {
+            this.dataset = dataset;
+            this.teams = teams;
+            this.pages = pages;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return How long the load took, in milliseconds.
+         */
+        public long getMillis() {
+            return nanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return "Loaded " + teams + " teams from " + dataset + " in " + getMillis() + "ms (" + pages + " pages)";
+        }
+    }
+
+}
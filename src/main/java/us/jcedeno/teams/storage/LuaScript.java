@@ -0,0 +1,99 @@
+package us.jcedeno.teams.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisScriptingAsyncCommands;
+import io.lettuce.core.api.sync.RedisScriptingCommands;
+
+/**
+ * A lua script that is executed on the redis server. Scripts are called by
+ * their SHA-1 digest and only sent in full the first time a server doesn't
+ * know them.
+ * 
+ * @author jcedeno
+ */
+public class LuaScript {
+    private final String source;
+    private final String digest;
+    private final ScriptOutputType outputType;
+
+    /**
+     * @param source     The lua source of the script.
+     * @param outputType The type of the value returned by the script.
+     */
+    public LuaScript(String source, ScriptOutputType outputType) {
+        this.source = source;
+        this.outputType = outputType;
+        this.digest = sha1(source);
+    }
+
+    /**
+     * Runs the script, blocking the calling thread.
+     * 
+     * @param commands The connection to run the script on.
+     * @param keys     The keys the script accesses.
+     * @param args     The arguments of the script.
+     * @return The value returned by the script.
+     */
+    @SafeVarargs
+    public final <K, V, T> T execute(RedisScriptingCommands<K, V> commands, K[] keys, V... args) {
+        try {
+            return commands.evalsha(digest, outputType, keys, args);
+        } catch (RedisNoScriptException ex) {
+            return commands.eval(source, outputType, keys, args);
+        }
+    }
+
+    /**
+     * Runs the script without blocking the calling thread.
+     * 
+     * @param commands The connection to run the script on.
+     * @param keys     The keys the script accesses.
+     * @param args     The arguments of the script.
+     * @return A stage completed with the value returned by the script.
+     */
+    @SafeVarargs
+    public final <K, V, T> CompletionStage<T> executeAsync(RedisScriptingAsyncCommands<K, V> commands, K[] keys,
+            V... args) {
+        var result = new CompletableFuture<T>();
+        commands.<T>evalsha(digest, outputType, keys, args).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (unwrap(error) instanceof RedisNoScriptException) {
+                commands.<T>eval(source, outputType, keys, args).whenComplete((retried, retryError) -> {
+                    if (retryError == null)
+                        result.complete(retried);
+                    else
+                        result.completeExceptionally(retryError);
+                });
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static String sha1(String source) {
+        try {
+            var hash = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder(hash.length * 2);
+            for (var b : hash)
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    }
+
+}
@@ -0,0 +1,264 @@
+package us.jcedeno.teams.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import lombok.Getter;
+
+/**
+ * Keeps snapshots of datasets and switches between them, entirely on the redis
+ * server. A snapshot is the DUMP of a dataset hash and of its versions hash, so
+ * no team ever travels through a proxy to be backed up or restored. Every
+ * dataset has a sorted set indexing its snapshots by timestamp and a hash
+ * holding the dumps, so finding the latest snapshot, or the latest one before a
+ * given time, is a single O(log n) lookup.
+ * <p>
+ * Every snapshot also applies the retention policy: snapshots older than the
+ * max age are dropped, and then the oldest ones until at most the max count are
+ * left. Switching and restoring datasets take a snapshot of the current one,
+ * change the data and bump a generation counter in a single script, so other
+ * nodes only need to be told the new generation.
+ * 
+ * @author jcedeno
+ */
+public class SnapshotStore {
+    /** Prefix of the keys used by the store. */
+    public static final String PREFIX = "historical-sets:";
+    /** Key holding the name of the dataset in use. */
+    public static final String DATASET_KEY = "dataset_name";
+    /** Key holding the generation of the dataset in use. */
+    public static final String GENERATION_KEY = "dataset_generation";
+
+    /**
+     * Takes a snapshot of a dataset. Arguments: index, data, dataset and versions
+     * keys, then id, timestamp, max count and min timestamp. Returns the amount of
+     * snapshots dropped, or -1 if the dataset doesn't exist.
+     */
+    private static final String SNAPSHOT_FUNCTION = String.join("\n",
+            "local function snapshot(index, data, set, versions, id, ts, max, minTs)",
+            "  local dump = redis.call('DUMP', set)",
+            "  if not dump then return -1 end",
+            "  redis.call('ZADD', index, ts, id)",
+            "  redis.call('HSET', data, id, dump)",
+            "  local versionsDump = redis.call('DUMP', versions)",
+            "  if versionsDump then redis.call('HSET', data, id .. ':versions', versionsDump) end",
+            "  local removed = 0",
+            "  local function drop(ids)",
+            "    for _, old in ipairs(ids) do",
+            "      redis.call('ZREM', index, old)",
+            "      redis.call('HDEL', data, old, old .. ':versions')",
+            "      removed = removed + 1",
+            "    end",
+            "  end",
+            "  drop(redis.call('ZRANGEBYSCORE', index, '-inf', '(' .. minTs))",
+            "  local excess = redis.call('ZCARD', index) - tonumber(max)",
+            "  if excess > 0 then drop(redis.call('ZRANGE', index, 0, excess - 1)) end",
+            "  return removed",
+            "end");
+
+    /**
+     * Takes a snapshot of a dataset. KEYS: index, data, dataset, versions. ARGV:
+     * id, timestamp, max count, min timestamp. Returns the amount of snapshots
+     * dropped, or -1 if the dataset doesn't exist.
+     */
+    private static final LuaScript SAVE = new LuaScript(String.join("\n", SNAPSHOT_FUNCTION,
+            "return snapshot(KEYS[1], KEYS[2], KEYS[3], KEYS[4], ARGV[1], ARGV[2], ARGV[3], ARGV[4])"),
+            ScriptOutputType.INTEGER);
+
+    /**
+     * Takes a snapshot of the current dataset and switches to another one. KEYS:
+     * index, data, dataset, versions, dataset name, generation. ARGV: id,
+     * timestamp, max count, min timestamp, new dataset. Returns the new
+     * generation.
+     */
+    private static final LuaScript SWITCH = new LuaScript(String.join("\n", SNAPSHOT_FUNCTION,
+            "snapshot(KEYS[1], KEYS[2], KEYS[3], KEYS[4], ARGV[1], ARGV[2], ARGV[3], ARGV[4])",
+            "redis.call('SET', KEYS[5], ARGV[5])",
+            "return redis.call('INCR', KEYS[6])"), ScriptOutputType.INTEGER);
+
+    /**
+     * Replaces the current dataset with the latest snapshot of a dataset taken at
+     * or before a time, after taking a snapshot of the current one. KEYS: source
+     * index, source data, index, data, dataset, versions, generation. ARGV: max
+     * timestamp, id, timestamp, max count, min timestamp. Returns the new
+     * generation, or 0 if there is no such snapshot.
+     * <p>
+     * Versions never go backwards: every team, restored or not, ends up one
+     * version above the highest of its current and restored ones. Events still in
+     * flight from before the restore are then older than the restored teams, and
+     * later writes never reuse a version other nodes have already seen.
+     */
+    private static final LuaScript RESTORE = new LuaScript(String.join("\n", SNAPSHOT_FUNCTION,
+            "local ids = redis.call('ZREVRANGEBYSCORE', KEYS[1], ARGV[1], '-inf', 'LIMIT', 0, 1)",
+            "if #ids == 0 then return 0 end",
+            "local dump = redis.call('HGET', KEYS[2], ids[1])",
+            "local versionsDump = redis.call('HGET', KEYS[2], ids[1] .. ':versions')",
+            "if not dump then return 0 end",
+            "snapshot(KEYS[3], KEYS[4], KEYS[5], KEYS[6], ARGV[2], ARGV[3], ARGV[4], ARGV[5])",
+            "local current = redis.call('HGETALL', KEYS[6])",
+            "redis.call('RESTORE', KEYS[5], 0, dump, 'REPLACE')",
+            "if versionsDump then",
+            "  redis.call('RESTORE', KEYS[6], 0, versionsDump, 'REPLACE')",
+            "else",
+            "  redis.call('DEL', KEYS[6])",
+            "end",
+            "for i = 1, #current, 2 do",
+            "  local restored = tonumber(redis.call('HGET', KEYS[6], current[i]) or '0')",
+            "  if tonumber(current[i + 1]) > restored then redis.call('HSET', KEYS[6], current[i], current[i + 1]) end",
+            "end",
+            "local seen = {}",
+            "local function bump(field)",
+            "  if not seen[field] then",
+            "    seen[field] = true",
+            "    redis.call('HINCRBY', KEYS[6], field, 1)",
+            "  end",
+            "end",
+            "for _, field in ipairs(redis.call('HKEYS', KEYS[6])) do bump(field) end",
+            "for _, field in ipairs(redis.call('HKEYS', KEYS[5])) do bump(field) end",
+            "return redis.call('INCR', KEYS[7])"), ScriptOutputType.INTEGER);
+
+    private final StatefulRedisConnection<String, byte[]> connection;
+    private final UUID nodeId;
+    private final @Getter int maxCount;
+    private final @Getter long maxAgeMillis;
+
+    /**
+     * @param connection   The connection used to run the scripts.
+     * @param nodeId       The id of this node, part of the snapshot ids.
+     * @param maxCount     The max amount of snapshots kept per dataset, 0 for no
+     *                     limit.
+     * @param maxAgeMillis The max age of the snapshots kept, 0 for no limit.
+     */
+    public SnapshotStore(StatefulRedisConnection<String, byte[]> connection, UUID nodeId, int maxCount,
+            long maxAgeMillis) {
+        this.connection = connection;
+        this.nodeId = nodeId;
+        this.maxCount = maxCount;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Takes a snapshot of a dataset, blocking the calling thread.
+     * 
+     * @param dataset The name of the dataset.
+     * @return The amount of old snapshots dropped by the retention policy, or -1
+     *         if the dataset doesn't exist.
+     */
+    public long save(String dataset) {
+        return SAVE.execute(connection.sync(), snapshotKeys(dataset), snapshotArgs());
+    }
+
+    /**
+     * Non-blocking version of {@link #save(String)}.
+     * 
+     * @param dataset The name of the dataset.
+     * @return A stage completed with the amount of old snapshots dropped, or -1
+     *         if the dataset doesn't exist.
+     */
+    public CompletionStage<Long> saveAsync(String dataset) {
+        return SAVE.executeAsync(connection.async(), snapshotKeys(dataset), snapshotArgs());
+    }
+
+    /**
+     * Takes a snapshot of the current dataset and makes another one the current
+     * dataset, blocking the calling thread.
+     * 
+     * @param current The name of the current dataset.
+     * @param next    The name of the new dataset.
+     * @return The new generation.
+     */
+    public long switchDataset(String current, String next) {
+        return SWITCH.execute(connection.sync(), switchKeys(current), switchArgs(next));
+    }
+
+    /**
+     * Non-blocking version of {@link #switchDataset(String, String)}.
+     * 
+     * @param current The name of the current dataset.
+     * @param next    The name of the new dataset.
+     * @return A stage completed with the new generation.
+     */
+    public CompletionStage<Long> switchDatasetAsync(String current, String next) {
+        return SWITCH.executeAsync(connection.async(), switchKeys(current), switchArgs(next));
+    }
+
+    /**
+     * Replaces the current dataset with the latest snapshot of another dataset
+     * taken at or before a time, blocking the calling thread. A snapshot of the
+     * current dataset is taken first.
+     * 
+     * @param current    The name of the current dataset.
+     * @param source     The name of the dataset whose snapshot is restored.
+     * @param atOrBefore The max timestamp of the snapshot, in epoch millis.
+     * @return The new generation, or 0 if there is no such snapshot.
+     */
+    public long restore(String current, String source, long atOrBefore) {
+        return RESTORE.execute(connection.sync(), restoreKeys(current, source), restoreArgs(atOrBefore));
+    }
+
+    /**
+     * Non-blocking version of {@link #restore(String, String, long)}.
+     * 
+     * @param current    The name of the current dataset.
+     * @param source     The name of the dataset whose snapshot is restored.
+     * @param atOrBefore The max timestamp of the snapshot, in epoch millis.
+     * @return A stage completed with the new generation, or 0 if there is no such
+     *         snapshot.
+     */
+    public CompletionStage<Long> restoreAsync(String current, String source, long atOrBefore) {
+        return RESTORE.executeAsync(connection.async(), restoreKeys(current, source), restoreArgs(atOrBefore));
+    }
+
+    private byte[][] snapshotArgs() {
+        var timestamp = System.currentTimeMillis();
+        var minTimestamp = maxAgeMillis > 0 ? timestamp - maxAgeMillis : 0;
+        return new byte[][] { bytes(timestamp + ":" + nodeId), bytes(timestamp),
+                bytes(maxCount > 0 ? maxCount : Integer.MAX_VALUE), bytes(minTimestamp) };
+    }
+
+    private byte[][] switchArgs(String next) {
+        var args = snapshotArgs();
+        return new byte[][] { args[0], args[1], args[2], args[3], bytes(next) };
+    }
+
+    private byte[][] restoreArgs(long atOrBefore) {
+        var args = snapshotArgs();
+        return new byte[][] { bytes(atOrBefore), args[0], args[1], args[2], args[3] };
+    }
+
+    private static String[] snapshotKeys(String dataset) {
+        var index = indexKeys(dataset);
+        return new String[] { index[0], index[1], dataset, TeamScripts.versionsKey(dataset) };
+    }
+
+    private static String[] switchKeys(String current) {
+        var keys = snapshotKeys(current);
+        return new String[] { keys[0], keys[1], keys[2], keys[3], DATASET_KEY, GENERATION_KEY };
+    }
+
+    private static String[] restoreKeys(String current, String source) {
+        var sourceKeys = indexKeys(source);
+        var keys = snapshotKeys(current);
+        return new String[] { sourceKeys[0], sourceKeys[1], keys[0], keys[1], keys[2], keys[3], GENERATION_KEY };
+    }
+
+    /**
+     * @param dataset The name of a dataset.
+     * @return The index and data keys of the dataset's snapshots.
+     */
+    public static String[] indexKeys(String dataset) {
+        return new String[] { PREFIX + dataset + ":index", PREFIX + dataset + ":data" };
+    }
+
+    private static byte[] bytes(long value) {
+        return bytes(Long.toString(value));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,97 @@
+package us.jcedeno.teams.storage;
+
+import io.lettuce.core.ScriptOutputType;
+
+/**
+ * The lua scripts used to read and write teams. Every team has a version, kept
+ * in a companion hash named after the dataset (see {@link #versionsKey(String)}),
+ * that is incremented atomically every time the team is written or destroyed.
+ * The version stored in that hash is the authoritative one, the one embedded in
+ * the encoded team is just informative.
+ * 
+ * @author jcedeno
+ */
+public final class TeamScripts {
+
+    /**
+     * Writes a team, bumps its version and mirrors its points to the leaderboard.
+     * KEYS: dataset, versions, leaderboard. ARGV: team id, encoded team, points.
+     * Returns the new version.
+     */
+    public static final LuaScript WRITE = new LuaScript(String.join("\n",
+            "local version = redis.call('HINCRBY', KEYS[2], ARGV[1], 1)",
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])",
+            "redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])",
+            "return version"), ScriptOutputType.INTEGER);
+
+    /**
+     * Same as {@link #WRITE} but only if the team exists and is still at the
+     * given version. KEYS: dataset, versions, leaderboard. ARGV: team id, encoded
+     * team, points, expected version. Returns the new version, 0 if the team
+     * doesn't exist or -1 if it was written by someone else in between.
+     */
+    public static final LuaScript WRITE_IF_VERSION = new LuaScript(String.join("\n",
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return 0 end",
+            "if tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0') ~= tonumber(ARGV[4]) then return -1 end",
+            "local version = redis.call('HINCRBY', KEYS[2], ARGV[1], 1)",
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])",
+            "redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])",
+            "return version"), ScriptOutputType.INTEGER);
+
+    /**
+     * Same as {@link #WRITE} but only if the team doesn't exist. Returns 0 if it
+     * does.
+     */
+    public static final LuaScript REGISTER = new LuaScript(String.join("\n",
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1 then return 0 end",
+            "local version = redis.call('HINCRBY', KEYS[2], ARGV[1], 1)",
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])",
+            "redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])",
+            "return version"), ScriptOutputType.INTEGER);
+
+    /**
+     * Deletes a team and bumps its version, so the deletion itself is ordered
+     * against other writes. KEYS: dataset, versions, leaderboard. ARGV: team id.
+     * Returns the new version, or 0 if the team didn't exist.
+     */
+    public static final LuaScript DESTROY = new LuaScript(String.join("\n",
+            "if redis.call('HDEL', KEYS[1], ARGV[1]) == 0 then return 0 end",
+            "redis.call('ZREM', KEYS[3], ARGV[1])",
+            "return redis.call('HINCRBY', KEYS[2], ARGV[1], 1)"), ScriptOutputType.INTEGER);
+
+    /**
+     * Reads a team along with its version. KEYS: dataset, versions. ARGV: team id.
+     * Returns a list with the encoded team, nil if not present, and its version.
+     */
+    public static final LuaScript FETCH = new LuaScript(String.join("\n",
+            "return {redis.call('HGET', KEYS[1], ARGV[1]), redis.call('HGET', KEYS[2], ARGV[1])}"),
+            ScriptOutputType.MULTI);
+
+    /**
+     * Reads one HSCAN page of a dataset along with the versions of its teams, so
+     * both are consistent with each other. KEYS: dataset, versions. ARGV: cursor,
+     * count hint. Returns a list with the next cursor and a flat list of encoded
+     * team and version pairs, the version being empty if the team has none.
+     */
+    public static final LuaScript SCAN_PAGE = new LuaScript(String.join("\n",
+            "local page = redis.call('HSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])",
+            "local entries = page[2]",
+            "local out = {}",
+            "for i = 1, #entries, 2 do",
+            "  out[#out + 1] = entries[i + 1]",
+            "  out[#out + 1] = redis.call('HGET', KEYS[2], entries[i]) or ''",
+            "end",
+            "return {page[1], out}"), ScriptOutputType.MULTI);
+
+    private TeamScripts() {
+    }
+
+    /**
+     * @param dataset The name of a dataset.
+     * @return The name of the hash holding the versions of the dataset's teams.
+     */
+    public static String versionsKey(String dataset) {
+        return dataset + ":versions";
+    }
+
+}
@@ -0,0 +1,21 @@
+package us.jcedeno.teams.sync;
+
+import java.util.UUID;
+
+/**
+ * Handler of the messages of a topic sent with
+ * {@link RedisSyncPipeline#communicateClusterMessage(String, byte[])}. Lets
+ * subsystems coordinate nodes over the pipeline without a type of their own.
+ * 
+ * @author jcedeno
+ */
+@FunctionalInterface
+public interface ClusterMessageHandler {
+
+    /**
+     * @param from The node that sent the message.
+     * @param body The message.
+     */
+    void onMessage(UUID from, byte[] body);
+
+}
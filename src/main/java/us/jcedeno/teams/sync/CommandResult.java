@@ -0,0 +1,69 @@
+package us.jcedeno.teams.sync;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import lombok.Getter;
+
+/**
+ * What came back from the nodes a command was sent to with the
+ * {@link CommandRpc}.
+ * 
+ * @author jcedeno
+ */
+public class CommandResult {
+    private final @Getter UUID correlationId;
+    /** How many acks were expected, or -1 if it wasn't known. */
+    private final @Getter int expected;
+    private final @Getter Map<UUID, Ack> acks;
+    /** Whether the timeout expired before every ack arrived. */
+    private final @Getter boolean timedOut;
+
+    CommandResult(UUID correlationId, int expected, Map<UUID, Ack> acks, boolean timedOut) {
+        this.correlationId = correlationId;
+        this.expected = expected;
+        this.acks = Collections.unmodifiableMap(acks);
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return The amount of nodes that ran the command succesfully.
+     */
+    public int getSucceeded() {
+        return (int) acks.values().stream().filter(Ack::isSuccess).count();
+    }
+
+    /**
+     * @return True if every expected node acked and all of them succeeded.
+     */
+    public boolean isAllSucceeded() {
+        return !timedOut && getSucceeded() == acks.size();
+    }
+
+    @Override
+    public String toString() {
+        return getSucceeded() + "/" + (expected >= 0 ? expected : acks.size()) + " nodes ran the command"
+                + (timedOut ? " (timed out with " + acks.size() + " acks)" : "");
+    }
+
+    /**
+     * The answer of a single node.
+     */
+    public static class Ack {
+        private final @Getter UUID node;
+        private final @Getter boolean success;
+        /** How long the node took to run the command. */
+        private final @Getter long durationMicros;
+        /** Why the command failed, null if it didn't. */
+        private final @Getter String error;
+
+        Ack(UUID node, boolean success, long durationMicros, String error) {
+            this.node = node;
+            this.success = success;
+            this.durationMicros = durationMicros;
+            this.error = error;
+        }
+    }
+
+}
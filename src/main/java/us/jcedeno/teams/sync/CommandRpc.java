@@ -0,0 +1,269 @@
+package us.jcedeno.teams.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.exceptions.CodecException;
+
+/**
+ * Sends commands to one node, some nodes or all of them, and collects an ack
+ * from each node that runs it.
+ * <p>
+ * Requests and acks are cluster messages of the {@link #TOPIC} topic. Every
+ * request carries a correlation id and the nodes it's meant for, an empty list
+ * meaning every node. The nodes it's meant for run it through
+ * {@link TeamManager#executeCommand(String, UUID)} and answer with whether it
+ * succeeded and how long it took.
+ * 
+ * @author jcedeno
+ */
+public class CommandRpc {
+    /** Topic of the requests and acks. */
+    public static final String TOPIC = "rpc";
+    private static final byte REQUEST = 1;
+    private static final byte ACK = 2;
+    private final TeamManager teamManager;
+    private final RedisSyncPipeline pipeline;
+    private final Map<UUID, Call> calls = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timeouts;
+    private final Logger logger = Logger.getLogger("command-rpc");
+
+    /**
+     * @param teamManager The team manager that runs the recieved commands.
+     * @param pipeline    The pipeline the messages travel through.
+     */
+    public CommandRpc(TeamManager teamManager, RedisSyncPipeline pipeline) {
+        this.teamManager = teamManager;
+        this.pipeline = pipeline;
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "command-rpc-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pipeline.registerClusterHandler(TOPIC, this::onMessage);
+    }
+
+    /**
+     * Sends a command to every other node.
+     * 
+     * @param cmd     The command.
+     * @param timeout How long to wait for the acks.
+     * @param unit    The unit of the timeout.
+     * @return A stage completed once every node that recieved the command acked,
+     *         or the timeout expired.
+     */
+    public CompletionStage<CommandResult> sendToAll(String cmd, long timeout, TimeUnit unit) {
+        return send(cmd, List.of(), timeout, unit);
+    }
+
+    /**
+     * Sends a command to some nodes. This node runs it too if it's one of them.
+     * 
+     * @param cmd     The command.
+     * @param targets The nodes, empty for every other node.
+     * @param timeout How long to wait for the acks.
+     * @param unit    The unit of the timeout.
+     * @return A stage completed once every target acked, or the timeout expired.
+     */
+    public CompletionStage<CommandResult> send(String cmd, Collection<UUID> targets, long timeout, TimeUnit unit) {
+        var id = UUID.randomUUID();
+        var self = teamManager.getNodeId();
+        var remote = new HashSet<>(targets);
+        var expected = remote.size();
+        var includesSelf = remote.remove(self);
+        // A request to all expects the live nodes, or the receivers once it's published if that's unknown.
+        var call = new Call(id, targets.isEmpty() ? -1 : expected);
+        calls.put(id, call);
+        timeouts.schedule(() -> call.complete(true), timeout, unit);
+
+        if (includesSelf)
+            execute(id, self, cmd);
+        if (!targets.isEmpty() && remote.isEmpty())
+            return call.future;
+        var membership = teamManager.getMembership();
+        var known = targets.isEmpty() && membership.isRunning();
+        if (known)
+            call.expect((int) membership.getAliveNodes().stream().filter(node -> !node.getNodeId().equals(self))
+                    .count());
+        pipeline.communicateClusterMessageAsync(TOPIC, request(id, remote, cmd)).thenAccept(receivers -> {
+            // Without membership, the subscriber count including this node. Streams can't count them.
+            if (targets.isEmpty() && !known && receivers >= 0)
+                call.expect((int) Math.max(0, receivers - 1));
+        }).exceptionally(ex -> {
+            logger.warning("Couldn't send command " + id + ": " + ex.getMessage());
+            call.complete(false);
+            return null;
+        });
+        return call.future;
+    }
+
+    private void onMessage(UUID from, byte[] body) {
+        var buffer = ByteBuffer.wrap(body);
+        try {
+            var kind = buffer.get();
+            var id = readUuid(buffer);
+            if (kind == REQUEST) {
+                var targets = new HashSet<UUID>();
+                var count = buffer.getInt();
+                for (int i = 0; i < count; i++)
+                    targets.add(readUuid(buffer));
+                var cmd = readString(buffer);
+                if (targets.isEmpty() || targets.contains(teamManager.getNodeId()))
+                    execute(id, from, cmd);
+            } else if (kind == ACK) {
+                var success = buffer.get() != 0;
+                var micros = buffer.getLong();
+                var error = buffer.get() != 0 ? readString(buffer) : null;
+                var call = calls.get(id);
+                if (call != null)
+                    call.ack(new CommandResult.Ack(from, success, micros, error));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new CodecException("Truncated rpc message from " + from, ex);
+        }
+    }
+
+    /**
+     * Runs a command and acks it to the node that sent it.
+     */
+    private void execute(UUID id, UUID sender, String cmd) {
+        var start = System.nanoTime();
+        CompletionStage<Boolean> execution;
+        try {
+            execution = teamManager.executeCommand(cmd, sender);
+        } catch (Exception ex) {
+            execution = CompletableFuture.failedFuture(ex);
+        }
+        execution.whenComplete((success, ex) -> {
+            var micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            var ok = ex == null && Boolean.TRUE.equals(success);
+            var error = ex != null ? String.valueOf(ex.getMessage()) : ok ? null : "Command not found";
+            if (sender.equals(teamManager.getNodeId())) {
+                var call = calls.get(id);
+                if (call != null)
+                    call.ack(new CommandResult.Ack(sender, ok, micros, error));
+            } else {
+                pipeline.communicateClusterMessageAsync(TOPIC, ack(id, ok, micros, error));
+            }
+        });
+    }
+
+    /**
+     * Stops the timeout thread. Calls still waiting never complete.
+     */
+    public void close() {
+        timeouts.shutdownNow();
+    }
+
+    private static byte[] request(UUID id, Set<UUID> targets, String cmd) {
+        return write(out -> {
+            out.writeByte(REQUEST);
+            writeUuid(out, id);
+            out.writeInt(targets.size());
+            for (var target : targets)
+                writeUuid(out, target);
+            writeString(out, cmd);
+        });
+    }
+
+    private static byte[] ack(UUID id, boolean success, long micros, String error) {
+        return write(out -> {
+            out.writeByte(ACK);
+            writeUuid(out, id);
+            out.writeBoolean(success);
+            out.writeLong(micros);
+            out.writeBoolean(error != null);
+            if (error != null)
+                writeString(out, error);
+        });
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] write(Writer writer) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A command waiting for its acks.
+     */
+    private class Call {
+        private final UUID id;
+        private final Map<UUID, CommandResult.Ack> acks = new HashMap<>();
+        private final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        /** How many acks complete the call, -1 while unknown. */
+        private int expected;
+
+        Call(UUID id, int expected) {
+            this.id = id;
+            this.expected = expected;
+        }
+
+        synchronized void expect(int expected) {
+            this.expected = expected;
+            if (acks.size() >= expected)
+                complete(false);
+        }
+
+        synchronized void ack(CommandResult.Ack ack) {
+            acks.put(ack.getNode(), ack);
+            if (expected >= 0 && acks.size() >= expected)
+                complete(false);
+        }
+
+        synchronized void complete(boolean timedOut) {
+            if (calls.remove(id) != null)
+                future.complete(new CommandResult(id, expected, Map.copyOf(acks), timedOut));
+        }
+    }
+
+}
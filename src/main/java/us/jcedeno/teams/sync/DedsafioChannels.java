@@ -16,6 +16,14 @@ public enum DedsafioChannels {
         return "dedsafio:" + this.toString();
     }
 
+    /**
+     * @return The name of the redis stream that backs the channel when the
+     *         {@link SyncTransport.Type#STREAMS} transport is used.
+     */
+    public String streamName() {
+        return "dedsafio:stream:" + this.toString();
+    }
+
     /**
      * @return An array containing all the channels in the enum
      */
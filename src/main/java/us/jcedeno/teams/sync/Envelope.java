@@ -0,0 +1,111 @@
+package us.jcedeno.teams.sync;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Helpers to build and read the messages sent through the
+ * {@link RedisSyncPipeline}. Every message starts with a fixed header made of
+ * the envelope version, the nodeId that sent it as two longs, the id of its
+ * {@link EventType} and, since version 2, the time it was sent in epoch millis,
+ * followed by the payload encoded by a
+ * {@link us.jcedeno.teams.codec.TeamCodec}. The header can be inspected without
+ * decoding the payload nor allocating, so messages that should be ignored are
+ * dropped as early as possible.
+ *
+ * @author jcedeno
+ */
+public final class Envelope {
+    /** Version of the header layout written by this node. */
+    public static final byte VERSION = 2;
+    /** Oldest version still read, without the send time. */
+    private static final byte MIN_VERSION = 1;
+    private static final int NODE_OFFSET = 1;
+    private static final int TYPE_OFFSET = NODE_OFFSET + 16;
+    private static final int SENT_AT_OFFSET = TYPE_OFFSET + 1;
+    private static final int V1_HEADER_LENGTH = SENT_AT_OFFSET;
+    private static final int HEADER_LENGTH = SENT_AT_OFFSET + 8;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private Envelope() {
+    }
+
+    /**
+     * @param nodeId  The nodeId that sends the message.
+     * @param type    The type of the event.
+     * @param payload The encoded event.
+     * @return The message to be published.
+     */
+    public static byte[] wrap(UUID nodeId, EventType type, byte[] payload) {
+        var message = new byte[HEADER_LENGTH + payload.length];
+        message[0] = VERSION;
+        LONGS.set(message, NODE_OFFSET, nodeId.getMostSignificantBits());
+        LONGS.set(message, NODE_OFFSET + 8, nodeId.getLeastSignificantBits());
+        message[TYPE_OFFSET] = type.getId();
+        LONGS.set(message, SENT_AT_OFFSET, System.currentTimeMillis());
+        System.arraycopy(payload, 0, message, HEADER_LENGTH, payload.length);
+        return message;
+    }
+
+    /**
+     * @param message The recieved message.
+     * @param nodeId  A nodeId.
+     * @return True if the message was sent by the given node.
+     */
+    public static boolean isFrom(byte[] message, UUID nodeId) {
+        return isReadable(message)
+                && (long) LONGS.get(message, NODE_OFFSET) == nodeId.getMostSignificantBits()
+                && (long) LONGS.get(message, NODE_OFFSET + 8) == nodeId.getLeastSignificantBits();
+    }
+
+    /**
+     * @param message The recieved message.
+     * @param channel The channel the message was recieved from.
+     * @return The type of the event, or null if the header is malformed or the
+     *         type doesn't belong to the channel.
+     */
+    public static EventType typeOf(byte[] message, DedsafioChannels channel) {
+        if (!isReadable(message))
+            return null;
+        var type = EventType.byId(message[TYPE_OFFSET]);
+        return type != null && type.getChannel() == channel ? type : null;
+    }
+
+    /**
+     * @param message The recieved message.
+     * @return The nodeId that sent the message.
+     */
+    public static UUID nodeOf(byte[] message) {
+        return new UUID((long) LONGS.get(message, NODE_OFFSET), (long) LONGS.get(message, NODE_OFFSET + 8));
+    }
+
+    /**
+     * @param message The recieved message.
+     * @return When the message was sent in epoch millis, or -1 if its header
+     *         doesn't say.
+     */
+    public static long sentAtOf(byte[] message) {
+        return message[0] >= 2 ? (long) LONGS.get(message, SENT_AT_OFFSET) : -1;
+    }
+
+    /**
+     * @param message The recieved message.
+     * @return A copy of the payload of the message.
+     */
+    public static byte[] payloadOf(byte[] message) {
+        return Arrays.copyOfRange(message, headerLength(message[0]), message.length);
+    }
+
+    private static boolean isReadable(byte[] message) {
+        return message.length > 0 && message[0] >= MIN_VERSION && message[0] <= VERSION
+                && message.length >= headerLength(message[0]);
+    }
+
+    private static int headerLength(byte version) {
+        return version == 1 ? V1_HEADER_LENGTH : HEADER_LENGTH;
+    }
+
+}
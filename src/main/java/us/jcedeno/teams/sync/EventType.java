@@ -0,0 +1,52 @@
+package us.jcedeno.teams.sync;
+
+/**
+ * The types of events that travel through the {@link RedisSyncPipeline}. Every
+ * type belongs to a single {@link DedsafioChannels} and is identified on the
+ * wire by its id, which is part of the {@link Envelope} header.
+ *
+ * @author jcedeno
+ */
+public enum EventType {
+    CREATE(1, DedsafioChannels.EVENTS), DESTROY(2, DedsafioChannels.EVENTS), CHANGE_SET(3, DedsafioChannels.SYNC),
+    COMMAND(4, DedsafioChannels.CMD),
+    /** Message of a subsystem built on top of the pipeline, see {@link ClusterMessageHandler}. */
+    CLUSTER(5, DedsafioChannels.CMD);
+
+    private static final EventType[] BY_ID = new EventType[256];
+
+    static {
+        for (var type : values())
+            BY_ID[type.id & 0xFF] = type;
+    }
+
+    private final byte id;
+    private final DedsafioChannels channel;
+
+    EventType(int id, DedsafioChannels channel) {
+        this.id = (byte) id;
+        this.channel = channel;
+    }
+
+    /**
+     * @return The id that identifies this type in the envelope header.
+     */
+    public byte getId() {
+        return id;
+    }
+
+    /**
+     * @return The channel this type of event is published to.
+     */
+    public DedsafioChannels getChannel() {
+        return channel;
+    }
+
+    /**
+     * @param id The id read from an envelope header.
+     * @return The type with the given id, or null if it's unknown.
+     */
+    static EventType byId(byte id) {
+        return BY_ID[id & 0xFF];
+    }
+}
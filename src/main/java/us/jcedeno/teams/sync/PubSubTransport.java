@@ -0,0 +1,59 @@
+package us.jcedeno.teams.sync;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import us.jcedeno.teams.TeamManager;
+
+/**
+ * Transport that uses a Redis PubSub connection. Messages are delivered on
+ * Lettuce's I/O thread and are lost for nodes that aren't connected when they
+ * are published.
+ * 
+ * @author jcedeno
+ */
+public class PubSubTransport implements SyncTransport {
+    private final TeamManager teamManager;
+    private StatefulRedisPubSubConnection<String, byte[]> pubSubConnection;
+
+    public PubSubTransport(TeamManager teamManager) {
+        this.teamManager = teamManager;
+    }
+
+    @Override
+    public void start(BiConsumer<String, byte[]> receiver, Runnable resync) {
+        this.pubSubConnection = teamManager.getRedisClient().connectPubSub(TeamManager.BINARY_VALUES);
+        /** Add the listener */
+        this.pubSubConnection.addListener(new RedisPubSubAdapter<String, byte[]>() {
+            @Override
+            public void message(String channel, byte[] message) {
+                receiver.accept(channel, message);
+            }
+        });
+        this.pubSubConnection.async().subscribe(DedsafioChannels.getAllChannels());
+    }
+
+    @Override
+    public long publish(String channel, byte[] message) {
+        return teamManager.getRedisBinarySyncConnection().publish(channel, message);
+    }
+
+    @Override
+    public CompletionStage<Long> publishAsync(String channel, byte[] message) {
+        return teamManager.getRedisBinaryAsyncConnection().publish(channel, message);
+    }
+
+    @Override
+    public boolean isUp() {
+        return pubSubConnection != null && pubSubConnection.isOpen();
+    }
+
+    @Override
+    public void close() {
+        if (pubSubConnection != null)
+            pubSubConnection.close();
+    }
+
+}
@@ -1,13 +1,22 @@
 package us.jcedeno.teams.sync;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
-
-import io.lettuce.core.pubsub.RedisPubSubListener;
-import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.codec.TeamCodec;
+import us.jcedeno.teams.exceptions.CodecException;
+import us.jcedeno.teams.metrics.SyncMetrics;
 import us.jcedeno.teams.objects.Team;
 import us.jcedeno.teams.objects.events.PipelineChangeSet;
 import us.jcedeno.teams.objects.events.SendCommandToNodes;
@@ -15,22 +24,67 @@ import us.jcedeno.teams.objects.events.TeamCreationUpdate;
 import us.jcedeno.teams.objects.events.TeamDeletion;
 
 /**
- * Redis pipeline for team synchronization. Uses a Redis PubSub connection to
- * achieve the goal.
+ * Redis pipeline for team synchronization. Messages travel over a
+ * {@link SyncTransport}, pub/sub by default or streams if configured. Every
+ * message is wrapped in an {@link Envelope}, whose header is checked before
+ * decoding anything, so messages coming from this node or of unknown types are
+ * dropped without decoding the payload. Recieved events are decoded on the
+ * transport's thread and then applied by a {@link SyncDispatcher}.
  */
-public class RedisSyncPipeline implements RedisPubSubListener<String, String> {
-    private static Gson gson = new Gson();
+public class RedisSyncPipeline {
+    /** Only one out of this many traces is actually logged. */
+    private static final int TRACE_SAMPLE_RATE = 100;
     private TeamManager teamManager;
-    private StatefulRedisPubSubConnection<String, String> pubSubConnection;
+    private SyncTransport transport;
+    private SyncDispatcher dispatcher;
     private Logger logger;
+    private final UUID nodeId;
+    private final TeamCodec codec;
+    private final Map<String, DedsafioChannels> channels = new HashMap<>();
+    /** Handlers of every type. */
+    private final EnumMap<EventType, EventHandler> handlers = new EnumMap<>(EventType.class);
+    private final SyncMetrics metrics;
+    private final AtomicLong traceCounter = new AtomicLong();
+    private final Map<String, ClusterMessageHandler> clusterHandlers = new ConcurrentHashMap<>();
 
+    /**
+     * @param teamManager The team manager the events are applied to.
+     */
     public RedisSyncPipeline(TeamManager teamManager) {
+        this(teamManager, createTransport(teamManager));
+    }
+
+    /**
+     * @param teamManager The team manager the events are applied to.
+     * @param transport   The transport the messages travel through.
+     */
+    public RedisSyncPipeline(TeamManager teamManager, SyncTransport transport) {
         this.teamManager = teamManager;
-        this.pubSubConnection = teamManager.getRedisClient().connectPubSub();
-        /** Add the listener */
-        this.pubSubConnection.addListener(this);
-        this.pubSubConnection.async().subscribe(DedsafioChannels.getAllChannels());
-        this.logger = Logger.getLogger("sync-" + teamManager.getNodeId().toString().split("-")[0]);
+        this.nodeId = teamManager.getNodeId();
+        this.codec = teamManager.getCodec();
+        this.metrics = teamManager.getMetrics();
+        this.logger = Logger.getLogger("sync-" + nodeId.toString().split("-")[0]);
+        this.dispatcher = new SyncDispatcher("sync-" + nodeId.toString().split("-")[0],
+                Runtime.getRuntime().availableProcessors());
+        // Precompute the lookup tables used for every message.
+        for (var channel : DedsafioChannels.values())
+            channels.put(channel.fullName(), channel);
+        handlers.put(EventType.CREATE, (from, sentAt, payload) -> handleCreationOrUpdate(sentAt, payload));
+        handlers.put(EventType.DESTROY, (from, sentAt, payload) -> handleDestruction(sentAt, payload));
+        handlers.put(EventType.CHANGE_SET, (from, sentAt, payload) -> handleChangeOfDataset(sentAt, payload));
+        handlers.put(EventType.COMMAND, (from, sentAt, payload) -> handleCommand(sentAt, payload));
+        handlers.put(EventType.CLUSTER, this::handleClusterMessage);
+        metrics.setQueueDepth(dispatcher::getQueueDepth);
+
+        this.transport = transport;
+        this.transport.start(this::message, this::resync);
+    }
+
+    private static SyncTransport createTransport(TeamManager teamManager) {
+        var settings = teamManager.getSettings();
+        return settings.getTransport() == SyncTransport.Type.STREAMS
+                ? new StreamTransport(teamManager, settings.getStreamMaxLength())
+                : new PubSubTransport(teamManager);
     }
 
     /**
@@ -40,26 +94,64 @@ public class RedisSyncPipeline implements RedisPubSubListener<String, String> {
      * @param team The team that was created.
      */
     public void communicateCreationOrUpdate(Team team) {
-        logger.info("Attempting to communicate creation or update for " + team);
-        this.teamManager.getRedisSyncConnection().publish(DedsafioChannels.EVENTS.fullName(),
-                "create@:@" + gson.toJson(new TeamCreationUpdate(team, teamManager.getNodeId())));
+        trace(() -> "Attempting to communicate creation or update for " + team);
+        this.transport.publish(DedsafioChannels.EVENTS.fullName(),
+                creationOrUpdateMessage(team));
+    }
+
+    /**
+     * Non-blocking version of {@link #communicateCreationOrUpdate(Team)}.
+     * 
+     * @param team The team that was created.
+     * @return A stage completed with the amount of nodes that recieved the update.
+     */
+    public CompletionStage<Long> communicateCreationOrUpdateAsync(Team team) {
+        trace(() -> "Attempting to communicate creation or update for " + team);
+        return this.transport.publishAsync(DedsafioChannels.EVENTS.fullName(),
+                creationOrUpdateMessage(team));
     }
 
     public void communicateDestructionOfTeam(Team team) {
-        logger.info("Attempting to communicate creation or update for " + team);
-        this.teamManager.getRedisSyncConnection().publish(DedsafioChannels.EVENTS.fullName(),
-                "destroy@:@" + gson.toJson(new TeamDeletion(team, teamManager.getNodeId())));
+        trace(() -> "Attempting to communicate destruction of " + team);
+        this.transport.publish(DedsafioChannels.EVENTS.fullName(),
+                destructionMessage(team));
+    }
+
+    /**
+     * Non-blocking version of {@link #communicateDestructionOfTeam(Team)}.
+     * 
+     * @param team The team that was destroyed.
+     * @return A stage completed with the amount of nodes that recieved the update.
+     */
+    public CompletionStage<Long> communicateDestructionOfTeamAsync(Team team) {
+        trace(() -> "Attempting to communicate destruction of " + team);
+        return this.transport.publishAsync(DedsafioChannels.EVENTS.fullName(),
+                destructionMessage(team));
     }
 
     /**
      * Method that communicates to all the other nodes about the change of a set.
      * 
      * @param newDataset The new dataset.
+     * @param generation The generation of the dataset after the change.
+     */
+    public void communicateChangeOfDataset(String newDataset, long generation) {
+        trace(() -> "Attempting to communicate a change of dataset to " + newDataset);
+        this.transport.publish(DedsafioChannels.SYNC.fullName(),
+                changeOfDatasetMessage(newDataset, generation));
+    }
+
+    /**
+     * Non-blocking version of {@link #communicateChangeOfDataset(String, long)}.
+     * 
+     * @param newDataset The new dataset.
+     * @param generation The generation of the dataset after the change.
+     * @return A stage completed with the amount of nodes that recieved the update.
      */
-    public void communicateChangeOfDataset(String newDataset) {
-        logger.info("Attempting to communicate a change of dataset to " + newDataset);
-        this.teamManager.getRedisSyncConnection().publish(DedsafioChannels.SYNC.fullName(),
-                gson.toJson(new PipelineChangeSet(newDataset, teamManager.getNodeId())));
+    public CompletionStage<Long> communicateChangeOfDatasetAsync(String newDataset, long generation) {
+        trace(() -> "Attempting to communicate a change of dataset to " + newDataset);
+        return this.transport.publishAsync(DedsafioChannels.SYNC.fullName(),
+                changeOfDatasetMessage(newDataset, generation));
     }
 
     /**
@@ -69,158 +161,229 @@ public class RedisSyncPipeline implements RedisPubSubListener<String, String> {
      * @return Integer indicating how many nodes recieved the command.
      */
     public long communicateCommandExecution(String cmd) {
-        logger.info("Attempting to communicate a command execution " + cmd + " to other nodes.");
-        return this.teamManager.getRedisSyncConnection().publish(DedsafioChannels.CMD.fullName(),
-                gson.toJson(new SendCommandToNodes(cmd, teamManager.getNodeId())));
+        trace(() -> "Attempting to communicate a command execution " + cmd + " to other nodes.");
+        return this.transport.publish(DedsafioChannels.CMD.fullName(),
+                commandExecutionMessage(cmd));
+    }
+
+    /**
+     * Non-blocking version of {@link #communicateCommandExecution(String)}.
+     * 
+     * @param cmd The command to be executed.
+     * @return A stage completed with the amount of nodes that recieved the
+     *         command.
+     */
+    public CompletionStage<Long> communicateCommandExecutionAsync(String cmd) {
+        trace(() -> "Attempting to communicate a command execution " + cmd + " to other nodes.");
+        return this.transport.publishAsync(DedsafioChannels.CMD.fullName(),
+                commandExecutionMessage(cmd));
+    }
+
+    /**
+     * Registers the handler of the cluster messages of a topic. Messages sent by
+     * this node are not delivered to it.
+     * 
+     * @param topic   The topic.
+     * @param handler The handler, ran on the dispatcher in the order the messages
+     *                of the topic were recieved.
+     */
+    public void registerClusterHandler(String topic, ClusterMessageHandler handler) {
+        clusterHandlers.put(topic, handler);
+    }
+
+    /**
+     * Sends a message of a subsystem to every other node.
+     * 
+     * @param topic The topic, used to find the handler in the other nodes.
+     * @param body  The message.
+     * @return How many nodes recieved the message, or -1 if the transport can't
+     *         tell.
+     */
+    public long communicateClusterMessage(String topic, byte[] body) {
+        return this.transport.publish(DedsafioChannels.CMD.fullName(), clusterMessage(topic, body));
+    }
+
+    /**
+     * Non-blocking version of {@link #communicateClusterMessage(String, byte[])}.
+     * 
+     * @param topic The topic, used to find the handler in the other nodes.
+     * @param body  The message.
+     * @return A stage completed with how many nodes recieved the message.
+     */
+    public CompletionStage<Long> communicateClusterMessageAsync(String topic, byte[] body) {
+        return this.transport.publishAsync(DedsafioChannels.CMD.fullName(), clusterMessage(topic, body));
+    }
+
+    private byte[] clusterMessage(String topic, byte[] body) {
+        var topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        var payload = ByteBuffer.allocate(Short.BYTES + topicBytes.length + body.length);
+        payload.putShort((short) topicBytes.length).put(topicBytes).put(body);
+        return Envelope.wrap(nodeId, EventType.CLUSTER, payload.array());
+    }
+
+    private byte[] creationOrUpdateMessage(Team team) {
+        return Envelope.wrap(nodeId, EventType.CREATE,
+                codec.encodeCreationUpdate(new TeamCreationUpdate(team, nodeId)));
+    }
+
+    private byte[] destructionMessage(Team team) {
+        return Envelope.wrap(nodeId, EventType.DESTROY, codec.encodeDeletion(new TeamDeletion(team, nodeId)));
+    }
+
+    private byte[] changeOfDatasetMessage(String newDataset, long generation) {
+        return Envelope.wrap(nodeId, EventType.CHANGE_SET,
+                codec.encodeChangeSet(new PipelineChangeSet(newDataset, nodeId, generation)));
+    }
+
+    private byte[] commandExecutionMessage(String cmd) {
+        return Envelope.wrap(nodeId, EventType.COMMAND, codec.encodeCommand(new SendCommandToNodes(cmd, nodeId)));
     }
 
     /**
      * @return true if the pipeline is connected to the Redis server.
      */
     public boolean isPipelineUp() {
-        return this.pubSubConnection.isOpen();
+        return this.transport.isUp();
     }
 
-    @Override
-    public void message(String channel, String message) {
-        // logger.info(String.format("Channel %s: %s", channel, message));
-        // Now process the message into whatever it should represent
-        var split = channel.split(":");
-        if (split.length < 1) {
-            logger.warning("Wrong format?");
+    /**
+     * @return The dispatcher that applies the events recieved by this pipeline.
+     */
+    public SyncDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Handles a message recieved by the transport.
+     * 
+     * @param channel The full name of the channel.
+     * @param message The message.
+     */
+    public void message(String channel, byte[] message) {
+        var dChannel = channels.get(channel);
+        if (dChannel == null) {
+            trace(() -> "Unknown channel: " + channel);
+            return;
+        }
+        // Every node recieves its own messages, drop them before decoding.
+        if (Envelope.isFrom(message, nodeId)) {
+            metrics.selfMessageDropped();
             return;
         }
-        if (split[0].equals("dedsafio")) {
-            var dChannel = DedsafioChannels.valueOf(split[1].toUpperCase());
-            switch (dChannel) {
-                // Process logic based on the channel that recieved the message.
-                case EVENTS: {
-                    var splitMessage = message.split("@:@");
-                    var type = splitMessage[0];
-                    var json = splitMessage[1];
-                    if (type.equalsIgnoreCase("create")) {
-                        try {
-                            var creationUpdate = gson.fromJson(json, TeamCreationUpdate.class);
-                            // Check if message is not comming from this node
-                            if (creationUpdate != null) {
-                                if (creationUpdate.getFrom().compareTo(teamManager.getNodeId()) == 0) {
-                                    logger.info(String.format(
-                                            "Received creation update for %s, ignorning since it comes from ourselves.",
-                                            creationUpdate.getTeam()));
-                                } else {
-                                    logger.info("Updating " + creationUpdate.getTeam() + " from node "
-                                            + creationUpdate.getFrom());
-                                    teamManager.updateTeam(creationUpdate.getTeam(), creationUpdate.getFrom());
-                                }
-                                break;
-                            }
-
-                        } catch (JsonSyntaxException ex) {
-                            ex.printStackTrace();
-                        }
-                    } else if (type.equalsIgnoreCase("destroy")) {
-                        try {
-                            var creationUpdate = gson.fromJson(json, TeamDeletion.class);
-                            // Check if message is not comming from this node
-                            if (creationUpdate != null) {
-                                if (creationUpdate.getFrom().compareTo(teamManager.getNodeId()) == 0) {
-                                    logger.info(String.format(
-                                            "Received deletion update for %s, ignorning since it comes from ourselves.",
-                                            creationUpdate.getTeam()));
-                                } else {
-                                    logger.info("Deleting " + creationUpdate.getTeam() + " from node "
-                                            + creationUpdate.getFrom());
-                                    teamManager.processDestroyTeam(creationUpdate.getTeam(), creationUpdate.getFrom());
-                                }
-                                break;
-                            }
-
-                        } catch (JsonSyntaxException ex) {
-                            ex.printStackTrace();
-                        }
-
-                    }
-
-                    break;
-                }
-                case SYNC: {
-                    try {
-                        var changeSet = gson.fromJson(message, PipelineChangeSet.class);
-                        // Check if message is not comming from this node
-                        if (changeSet != null) {
-                            if (changeSet.getFrom().compareTo(teamManager.getNodeId()) == 0) {
-                                logger.info(String.format(
-                                        "Received change set for %s, ignorning since it comes from ourselves.",
-                                        changeSet.getNewDataset()));
-                            } else {
-                                logger.info("Changing to dataset " + changeSet.getNewDataset()
-                                        + " as indicated from node " + changeSet.getFrom());
-                                teamManager.changeDataset(changeSet.getNewDataset(), false);
-                            }
-                            break;
-                        }
-
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                    break;
-                }
-                case CMD: {
-                    try {
-                        var cmd = gson.fromJson(message, SendCommandToNodes.class);
-                        if (cmd != null) {
-                            if (cmd.getFrom().compareTo(teamManager.getNodeId()) == 0) {
-                                logger.info(String.format("Received command from ourselves, ignoring."));
-                            } else {
-                                logger.info("Received command " + cmd.getCommand() + " from node " + cmd.getFrom());
-                                // Run the command
-                                teamManager.processCommand(cmd.getCommand(), cmd.getFrom());
-
-                            }
-                        }
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                    break;
-                }
-                case AUTH: {
-                    break;
-                }
-                default: {
-                    logger.warning("Unknown channel: " + channel);
-                }
-            }
+        var type = Envelope.typeOf(message, dChannel);
+        if (type == null) {
+            metrics.malformedMessageDropped();
+            trace(() -> "Dropping message of unknown type in channel " + channel);
+            return;
+        }
+        metrics.eventRecieved(type);
+        try {
+            handlers.get(type).handle(Envelope.nodeOf(message), Envelope.sentAtOf(message),
+                    Envelope.payloadOf(message));
+        } catch (RuntimeException ex) {
+            // Also covers events that decode but can't be dispatched, like a team without id.
+            metrics.malformedMessageDropped();
+            logger.log(Level.WARNING, "Malformed " + type + " event in channel " + channel, ex);
         }
-
     }
 
-    @Override
-    public void message(String pattern, String channel, String message) {
+    private void handleCreationOrUpdate(long sentAt, byte[] payload) {
+        var creationUpdate = codec.decodeCreationUpdate(payload);
+        trace(() -> "Updating " + creationUpdate.getTeam() + " from node " + creationUpdate.getFrom());
+        dispatch(creationUpdate.getTeam().getTeamID(), sentAt,
+                () -> teamManager.updateTeam(creationUpdate.getTeam(), creationUpdate.getFrom()));
+    }
 
+    private void handleDestruction(long sentAt, byte[] payload) {
+        var deletion = codec.decodeDeletion(payload);
+        trace(() -> "Deleting " + deletion.getTeam() + " from node " + deletion.getFrom());
+        dispatch(deletion.getTeam().getTeamID(), sentAt,
+                () -> teamManager.processDestroyTeam(deletion.getTeam(), deletion.getFrom()));
     }
 
-    @Override
-    public void subscribed(String channel, long count) {
+    private void handleChangeOfDataset(long sentAt, byte[] payload) {
+        var changeSet = codec.decodeChangeSet(payload);
+        logger.info("Changing to dataset " + changeSet.getNewDataset() + " as indicated from node "
+                + changeSet.getFrom());
+        // Every event before the change must be applied before switching.
+        dispatcher.dispatchBarrier(applied(sentAt,
+                () -> teamManager.applyRemoteDatasetChange(changeSet.getNewDataset(), changeSet.getGeneration())));
+    }
 
+    private void handleClusterMessage(UUID from, long sentAt, byte[] payload) {
+        var buffer = ByteBuffer.wrap(payload);
+        if (buffer.remaining() < Short.BYTES || buffer.remaining() - Short.BYTES < (buffer.getShort(0) & 0xFFFF))
+            throw CodecException.of("Truncated cluster message");
+        var topicBytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(topicBytes);
+        var topic = new String(topicBytes, StandardCharsets.UTF_8);
+        var handler = clusterHandlers.get(topic);
+        if (handler == null) {
+            trace(() -> "No handler for cluster topic " + topic);
+            return;
+        }
+        var body = new byte[buffer.remaining()];
+        buffer.get(body);
+        dispatch(topic, sentAt, () -> handler.onMessage(from, body));
     }
 
-    @Override
-    public void psubscribed(String pattern, long count) {
+    private void handleCommand(long sentAt, byte[] payload) {
+        var cmd = codec.decodeCommand(payload);
+        logger.info("Received command " + cmd.getCommand() + " from node " + cmd.getFrom());
+        dispatch(DedsafioChannels.CMD, sentAt, () -> teamManager.processCommand(cmd.getCommand(), cmd.getFrom()));
+    }
 
+    /**
+     * Dispatches the application of an event, recording its lag once applied.
+     */
+    private void dispatch(Object key, long sentAt, Runnable task) {
+        dispatcher.dispatch(key, applied(sentAt, task));
     }
 
-    @Override
-    public void unsubscribed(String channel, long count) {
+    private Runnable applied(long sentAt, Runnable task) {
+        return () -> {
+            task.run();
+            metrics.eventApplied(sentAt);
+        };
+    }
 
+    /**
+     * Handles the payload of a type of event.
+     */
+    private interface EventHandler {
+        /**
+         * @param from    The node that sent the event.
+         * @param sentAt  When the event was sent in epoch millis, -1 if unknown.
+         * @param payload The payload of the event.
+         */
+        void handle(UUID from, long sentAt, byte[] payload);
     }
 
-    @Override
-    public void punsubscribed(String pattern, long count) {
+    /**
+     * Logs high frequency messages. The message is only built if fine logging is
+     * enabled, and even then only one out of {@link #TRACE_SAMPLE_RATE} calls is
+     * logged.
+     * 
+     * @param message The supplier of the message.
+     */
+    private void trace(Supplier<String> message) {
+        if (logger.isLoggable(Level.FINE) && traceCounter.getAndIncrement() % TRACE_SAMPLE_RATE == 0)
+            logger.fine(message);
+    }
 
+    /**
+     * Pulls the dataset again once every event already recieved is applied.
+     */
+    private void resync() {
+        dispatcher.dispatchBarrier(teamManager::reloadDataset);
     }
 
-    public void closePubSubConnection() {
-        this.pubSubConnection.close();
+    /**
+     * Closes the transport and stops applying events.
+     */
+    public void close() {
+        this.transport.close();
+        this.dispatcher.shutdown();
     }
 
 }
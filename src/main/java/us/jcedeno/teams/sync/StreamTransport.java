@@ -0,0 +1,201 @@
+package us.jcedeno.teams.sync;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.XAddArgs;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.XReadArgs.StreamOffset;
+import io.lettuce.core.api.StatefulRedisConnection;
+import us.jcedeno.teams.TeamManager;
+
+/**
+ * Transport that appends every message to a redis stream per channel, trimmed
+ * to an approximate maximum length. Each node reads the streams from the last
+ * id it has processed, so after a disconnection it catches up on the events it
+ * missed instead of losing them. If the events it missed were already trimmed
+ * the local state is pulled again.
+ * <p>
+ * The last processed ids are acknowledged to a per node hash, so how far behind
+ * every node is can be inspected from redis.
+ * 
+ * @author jcedeno
+ */
+public class StreamTransport implements SyncTransport {
+    /** Field of the stream entries that holds the message. */
+    private static final String FIELD = "m";
+    private static final String OFFSETS_KEY = "dedsafio:stream-offsets:";
+    /** Offsets of dead nodes are forgotten after a day. */
+    private static final long OFFSETS_TTL_SECONDS = 24 * 60 * 60;
+    private static final Duration BLOCK = Duration.ofSeconds(2);
+    private static final long BATCH_SIZE = 256;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private final TeamManager teamManager;
+    private final XAddArgs addArgs;
+    private final Map<String, String> streamToChannel = new HashMap<>();
+    /** Last processed id of every stream. */
+    private final Map<String, String> offsets = new ConcurrentHashMap<>();
+    private final Logger logger;
+    private StatefulRedisConnection<String, byte[]> readConnection;
+    private volatile boolean running;
+    private Thread reader;
+
+    /**
+     * @param teamManager The team manager that owns the transport.
+     * @param maxLength   The approximate amount of entries kept in every stream.
+     */
+    public StreamTransport(TeamManager teamManager, long maxLength) {
+        this.teamManager = teamManager;
+        this.addArgs = new XAddArgs().maxlen(maxLength).approximateTrimming();
+        for (var channel : DedsafioChannels.values())
+            streamToChannel.put(channel.streamName(), channel.fullName());
+        this.logger = Logger.getLogger("stream-" + teamManager.getNodeId().toString().split("-")[0]);
+    }
+
+    @Override
+    public void start(BiConsumer<String, byte[]> receiver, Runnable resync) {
+        // Blocking reads get their own connection so they never hold up other commands.
+        this.readConnection = teamManager.getRedisClient().connect(TeamManager.BINARY_VALUES);
+        // Start at the current tail, before the dataset is pulled, so nothing is missed.
+        var commands = readConnection.sync();
+        for (var stream : streamToChannel.keySet()) {
+            var last = commands.xrevrange(stream, Range.unbounded(), Limit.from(1));
+            offsets.put(stream, last.isEmpty() ? "0-0" : last.get(0).getId());
+        }
+        this.running = true;
+        this.reader = new Thread(() -> readLoop(receiver, resync),
+                "stream-reader-" + teamManager.getNodeId().toString().split("-")[0]);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readLoop(BiConsumer<String, byte[]> receiver, Runnable resync) {
+        var commands = readConnection.sync();
+        var args = XReadArgs.Builder.block(BLOCK).count(BATCH_SIZE);
+        var backoff = 0L;
+        var recovering = false;
+        while (running) {
+            try {
+                if (recovering && anyTrimmed()) {
+                    logger.warning("Missed events were already trimmed from the streams, pulling the dataset again.");
+                    resync.run();
+                }
+                recovering = false;
+                var streamOffsets = new ArrayList<StreamOffset<String>>(offsets.size());
+                offsets.forEach((stream, id) -> streamOffsets.add(StreamOffset.from(stream, id)));
+                StreamOffset<String>[] readFrom = streamOffsets.toArray(new StreamOffset[0]);
+                var messages = commands.xread(args, readFrom);
+                for (var message : messages) {
+                    var body = message.getBody().get(FIELD);
+                    try {
+                        if (body != null)
+                            receiver.accept(streamToChannel.get(message.getStream()), body);
+                    } catch (RuntimeException ex) {
+                        // Skipped, otherwise the same entry would be read again forever.
+                        logger.log(Level.SEVERE, "Failed to process stream entry " + message.getId() + ", skipping it",
+                                ex);
+                    }
+                    offsets.put(message.getStream(), message.getId());
+                }
+                if (!messages.isEmpty())
+                    acknowledge();
+                backoff = 0;
+            } catch (RuntimeException ex) {
+                if (!running)
+                    break;
+                // Redis errors may mean missed entries, anything else is just retried.
+                recovering |= ex instanceof RedisException;
+                backoff = Math.min(MAX_BACKOFF_MILLIS, Math.max(100, backoff * 2));
+                logger.log(ex instanceof RedisException ? Level.WARNING : Level.SEVERE,
+                        "Couldn't read the sync streams, retrying in " + backoff + "ms", ex);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if entries newer than the last processed id of a stream have
+     *         possibly been trimmed.
+     */
+    private boolean anyTrimmed() {
+        var commands = readConnection.sync();
+        for (var entry : offsets.entrySet()) {
+            var first = commands.xrange(entry.getKey(), Range.unbounded(), Limit.from(1));
+            if (!first.isEmpty() && compareIds(first.get(0).getId(), entry.getValue()) > 0
+                    && !"0-0".equals(entry.getValue()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stores the last processed ids, fire and forget.
+     */
+    private void acknowledge() {
+        var key = OFFSETS_KEY + teamManager.getNodeId();
+        var asyncCon = teamManager.getRedisAsyncConnection();
+        asyncCon.hset(key, new HashMap<>(offsets));
+        asyncCon.expire(key, OFFSETS_TTL_SECONDS);
+    }
+
+    /**
+     * @param a A stream entry id.
+     * @param b Another stream entry id.
+     * @return A negative number, zero, or a positive number as a is older, equal
+     *         or newer than b.
+     */
+    static int compareIds(String a, String b) {
+        var aSplit = a.indexOf('-');
+        var bSplit = b.indexOf('-');
+        var byTime = Long.compare(Long.parseLong(a.substring(0, aSplit)), Long.parseLong(b.substring(0, bSplit)));
+        return byTime != 0 ? byTime
+                : Long.compare(Long.parseLong(a.substring(aSplit + 1)), Long.parseLong(b.substring(bSplit + 1)));
+    }
+
+    @Override
+    public long publish(String channel, byte[] message) {
+        teamManager.getRedisBinarySyncConnection().xadd(streamOf(channel), addArgs, Map.of(FIELD, message));
+        return -1;
+    }
+
+    @Override
+    public CompletionStage<Long> publishAsync(String channel, byte[] message) {
+        return teamManager.getRedisBinaryAsyncConnection().xadd(streamOf(channel), addArgs, Map.of(FIELD, message))
+                .thenApply(id -> -1L);
+    }
+
+    private String streamOf(String channel) {
+        return DedsafioChannels.valueOf(channel.substring(channel.indexOf(':') + 1).toUpperCase()).streamName();
+    }
+
+    @Override
+    public boolean isUp() {
+        return running && readConnection != null && readConnection.isOpen();
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        if (reader != null)
+            reader.interrupt();
+        if (readConnection != null)
+            readConnection.close();
+    }
+
+}
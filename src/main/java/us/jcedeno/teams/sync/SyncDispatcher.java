@@ -0,0 +1,146 @@
+package us.jcedeno.teams.sync;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands the events decoded by the {@link RedisSyncPipeline} to a fixed pool of
+ * worker threads, so no blocking work ever runs on Lettuce's I/O thread.
+ * <p>
+ * Every worker owns its own queue (a stripe). Events dispatched with the same
+ * key always land in the same stripe, so they are applied in the order they
+ * were recieved. Barriers run once every event dispatched before them has been
+ * applied and before any event dispatched after them, which is what dataset
+ * switches require.
+ *
+ * @author jcedeno
+ */
+public class SyncDispatcher {
+    /** Queue depth at which a warning is logged. */
+    private static final int HIGH_WATER_MARK = 1000;
+    private final ThreadPoolExecutor[] stripes;
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private volatile boolean aboveHighWater = false;
+    private final Logger logger;
+
+    /**
+     * @param name    The name used for the worker threads and logger.
+     * @param stripes The amount of worker threads to use.
+     */
+    public SyncDispatcher(String name, int stripes) {
+        this.stripes = new ThreadPoolExecutor[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            var threadName = name + "-worker-" + i;
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        var thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        this.logger = Logger.getLogger(name + "-dispatcher");
+    }
+
+    /**
+     * Queues a task to be ran after every other task previously dispatched with
+     * the same key.
+     *
+     * @param key  The ordering key, usually a team id.
+     * @param task The task to run.
+     */
+    public void dispatch(Object key, Runnable task) {
+        stripes[Math.floorMod(key.hashCode(), stripes.length)].execute(() -> runSafely(task));
+        checkQueueDepth();
+    }
+
+    /**
+     * Queues a task that acts as a barrier across all stripes. It runs once all
+     * previously dispatched tasks are done, and no task dispatched afterwards
+     * starts until it finishes.
+     *
+     * @param task The task to run.
+     */
+    public synchronized void dispatchBarrier(Runnable task) {
+        var arrived = new CountDownLatch(stripes.length);
+        var released = new CountDownLatch(1);
+        for (int i = 0; i < stripes.length; i++) {
+            // The first stripe runs the task, every other one just holds its queue.
+            var leader = i == 0;
+            stripes[i].execute(() -> {
+                arrived.countDown();
+                try {
+                    if (leader) {
+                        arrived.await();
+                        runSafely(task);
+                    } else {
+                        released.await();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (leader)
+                        released.countDown();
+                }
+            });
+        }
+        checkQueueDepth();
+    }
+
+    /**
+     * @return The amount of tasks waiting to be ran across all stripes.
+     */
+    public int getQueueDepth() {
+        var depth = 0;
+        for (var stripe : stripes)
+            depth += stripe.getQueue().size();
+        return depth;
+    }
+
+    /**
+     * @return The highest queue depth observed since the dispatcher started.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * @return The amount of stripes, or worker threads, of this dispatcher.
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Stops all the workers. Tasks still queued are discarded.
+     */
+    public void shutdown() {
+        for (var stripe : stripes)
+            stripe.shutdownNow();
+    }
+
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception ex) {
+            logger.log(Level.SEVERE, "Failed to process a sync event", ex);
+        }
+    }
+
+    private void checkQueueDepth() {
+        var depth = getQueueDepth();
+        peakQueueDepth.accumulateAndGet(depth, Math::max);
+        if (depth >= HIGH_WATER_MARK && !aboveHighWater) {
+            aboveHighWater = true;
+            logger.warning("Sync queue depth reached " + depth + ", events are being applied late.");
+        } else if (depth < HIGH_WATER_MARK / 2 && aboveHighWater) {
+            aboveHighWater = false;
+            logger.info("Sync queue depth back to " + depth + ".");
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package us.jcedeno.teams.sync;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+/**
+ * The way messages of the {@link RedisSyncPipeline} travel between nodes.
+ * 
+ * @author jcedeno
+ */
+public interface SyncTransport {
+
+    /**
+     * The available transports.
+     */
+    enum Type {
+        /** Fire and forget redis pub/sub, the default. */
+        PUBSUB,
+        /** Durable redis streams, nodes catch up on missed events. */
+        STREAMS;
+    }
+
+    /**
+     * Starts delivering the messages of every {@link DedsafioChannels} to the
+     * given receiver. Messages published by this node are delivered too.
+     * 
+     * @param receiver Consumer of the full channel name and the message.
+     * @param resync   Ran when messages may have been lost for good and the local
+     *                 state must be pulled again.
+     */
+    void start(BiConsumer<String, byte[]> receiver, Runnable resync);
+
+    /**
+     * Publishes a message, blocking the calling thread.
+     * 
+     * @param channel The full name of the channel.
+     * @param message The message.
+     * @return How many nodes recieved the message, or -1 if the transport can't
+     *         tell.
+     */
+    long publish(String channel, byte[] message);
+
+    /**
+     * Non-blocking version of {@link #publish(String, byte[])}.
+     * 
+     * @param channel The full name of the channel.
+     * @param message The message.
+     * @return A stage completed with how many nodes recieved the message, or -1 if
+     *         the transport can't tell.
+     */
+    CompletionStage<Long> publishAsync(String channel, byte[] message);
+
+    /**
+     * @return true if the transport is connected to the Redis server.
+     */
+    boolean isUp();
+
+    /**
+     * Stops recieving messages and closes the connections of the transport.
+     */
+    void close();
+
+}
@@ -0,0 +1,151 @@
+package us.jcedeno.teams.velocity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.proxy.ProxyServer;
+
+import us.jcedeno.teams.TeamListener;
+import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.objects.Team;
+
+/**
+ * Index of the teams with at least one member online in this proxy, along with
+ * which of their members are online. It is kept up to date from logins,
+ * disconnections and team changes, so listing the online teams never has to go
+ * through every player or every team.
+ * <p>
+ * Must be registered as a listener on the proxy's event manager.
+ * 
+ * @author jcedeno
+ */
+public class OnlineTeamsIndex implements TeamListener {
+    private final TeamManager teamManager;
+    /** Players online in this proxy. */
+    private final Set<UUID> onlinePlayers = new HashSet<>();
+    /** Online members of every team with at least one of them online. */
+    private final Map<UUID, Set<UUID>> onlineMembers = new HashMap<>();
+    /** The team every online player is counted in. */
+    private final Map<UUID, UUID> countedIn = new HashMap<>();
+
+    /**
+     * Creates the index and starts listening to the teams of the manager. Players
+     * already online are picked up right away.
+     * 
+     * @param proxy       The proxy server instance.
+     * @param teamManager The team manager whose teams are indexed.
+     */
+    public OnlineTeamsIndex(ProxyServer proxy, TeamManager teamManager) {
+        this.teamManager = teamManager;
+        synchronized (this) {
+            for (var player : proxy.getAllPlayers())
+                onlinePlayers.add(player.getUniqueId());
+        }
+        teamManager.addTeamListener(this);
+        for (var player : proxy.getAllPlayers())
+            playerJoined(player.getUniqueId());
+    }
+
+    @Subscribe
+    public void onPostLogin(PostLoginEvent e) {
+        playerJoined(e.getPlayer().getUniqueId());
+    }
+
+    @Subscribe
+    public void onDisconnect(DisconnectEvent e) {
+        playerLeft(e.getPlayer().getUniqueId());
+    }
+
+    private synchronized void playerJoined(UUID player) {
+        onlinePlayers.add(player);
+        var team = teamManager.getPlayerTeam(player);
+        if (team != null)
+            count(player, team.getTeamID());
+    }
+
+    private synchronized void playerLeft(UUID player) {
+        onlinePlayers.remove(player);
+        uncount(player);
+    }
+
+    @Override
+    public synchronized void onTeamChanged(Team old, Team current) {
+        var teamId = old != null ? old.getTeamID() : current.getTeamID();
+        var counted = onlineMembers.remove(teamId);
+        if (counted != null) {
+            for (var member : counted)
+                countedIn.remove(member, teamId);
+        }
+        if (current == null || current.getMembers() == null)
+            return;
+        for (var member : current.getMembers()) {
+            if (onlinePlayers.contains(member))
+                count(member, teamId);
+        }
+    }
+
+    @Override
+    public synchronized void onTeamsCleared() {
+        onlineMembers.clear();
+        countedIn.clear();
+    }
+
+    /**
+     * @return The teams with at least one member online, each one once.
+     */
+    public synchronized List<Team> getOnlineTeams() {
+        var teams = teamManager.getTeamsMap();
+        var online = new ArrayList<Team>(onlineMembers.size());
+        for (var teamId : onlineMembers.keySet()) {
+            var team = teams.get(teamId);
+            if (team != null)
+                online.add(team);
+        }
+        return online;
+    }
+
+    /**
+     * @param teamId The id of a team.
+     * @return The amount of members of the team online in this proxy.
+     */
+    public synchronized int getOnlineMemberCount(UUID teamId) {
+        var members = onlineMembers.get(teamId);
+        return members != null ? members.size() : 0;
+    }
+
+    /**
+     * @return The amount of teams with at least one member online.
+     */
+    public synchronized int getOnlineTeamCount() {
+        return onlineMembers.size();
+    }
+
+    private void count(UUID player, UUID teamId) {
+        // A player that switched teams stops counting for the old one.
+        var previous = countedIn.put(player, teamId);
+        if (previous != null && !previous.equals(teamId))
+            removeMember(previous, player);
+        onlineMembers.computeIfAbsent(teamId, id -> new HashSet<>()).add(player);
+    }
+
+    private void uncount(UUID player) {
+        var teamId = countedIn.remove(player);
+        if (teamId != null)
+            removeMember(teamId, player);
+    }
+
+    private void removeMember(UUID teamId, UUID player) {
+        var members = onlineMembers.get(teamId);
+        if (members != null && members.remove(player) && members.isEmpty())
+            onlineMembers.remove(teamId);
+    }
+
+}
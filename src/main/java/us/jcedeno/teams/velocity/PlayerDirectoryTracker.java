@@ -0,0 +1,43 @@
+package us.jcedeno.teams.velocity;
+
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.proxy.ProxyServer;
+
+import us.jcedeno.teams.cluster.PlayerDirectory;
+
+/**
+ * Feeds the {@link PlayerDirectory} with the connections of this proxy. Players
+ * already online are registered right away.
+ * <p>
+ * Must be registered as a listener on the proxy's event manager.
+ * 
+ * @author jcedeno
+ */
+public class PlayerDirectoryTracker {
+    private final PlayerDirectory directory;
+
+    /**
+     * @param proxy     The proxy server instance.
+     * @param directory The directory to feed.
+     */
+    public PlayerDirectoryTracker(ProxyServer proxy, PlayerDirectory directory) {
+        this.directory = directory;
+        for (var player : proxy.getAllPlayers())
+            player.getCurrentServer().ifPresent(connection -> directory.connected(player.getUniqueId(),
+                    player.getUsername(), connection.getServerInfo().getName()));
+    }
+
+    @Subscribe
+    public void onServerConnected(ServerConnectedEvent e) {
+        var player = e.getPlayer();
+        directory.connected(player.getUniqueId(), player.getUsername(), e.getServer().getServerInfo().getName());
+    }
+
+    @Subscribe
+    public void onDisconnect(DisconnectEvent e) {
+        directory.disconnected(e.getPlayer().getUniqueId(), e.getPlayer().getUsername());
+    }
+
+}
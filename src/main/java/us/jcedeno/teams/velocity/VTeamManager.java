@@ -1,12 +1,13 @@
 package us.jcedeno.teams.velocity;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 
 import com.velocitypowered.api.proxy.ProxyServer;
 
 import us.jcedeno.teams.TeamManager;
+import us.jcedeno.teams.TeamManagerSettings;
 import us.jcedeno.teams.objects.Team;
 
 /**
@@ -17,6 +18,7 @@ import us.jcedeno.teams.objects.Team;
 public class VTeamManager extends TeamManager {
 
     ProxyServer proxy;
+    OnlineTeamsIndex onlineTeams;
 
     /**
      * Constructor for the BTeamManager class.
@@ -26,8 +28,19 @@ public class VTeamManager extends TeamManager {
      *                 needed.
      */
     public VTeamManager(ProxyServer proxy, String redisURI) {
-        super(redisURI);
+        this(proxy, redisURI, new TeamManagerSettings());
+    }
+
+    /**
+     * @param proxy    The proxy server instance.
+     * @param redisURI The URI of the Redis server. Include password and port if
+     *                 needed.
+     * @param settings The settings of the manager.
+     */
+    public VTeamManager(ProxyServer proxy, String redisURI, TeamManagerSettings settings) {
+        super(redisURI, settings);
         this.proxy = proxy;
+        this.onlineTeams = new OnlineTeamsIndex(proxy, this);
         // Connect to the chain and pull current data.
         this.initialize();
     }
@@ -37,7 +50,7 @@ public class VTeamManager extends TeamManager {
      */
     @Override
     public void updateTeam(Team team, UUID from) {
-        put(team);
+        applyRemoteUpdate(team);
     }
 
     @Override
@@ -47,44 +60,59 @@ public class VTeamManager extends TeamManager {
 
     }
 
+    @Override
+    public CompletionStage<Boolean> executeCommand(String cmd, UUID nodeId) {
+        return proxy.getCommandManager().executeImmediatelyAsync(proxy.getConsoleCommandSource(), cmd);
+    }
+
     @Override
     public void processDestroyTeam(Team team, UUID nodeId) {
-        remove(team);
+        applyRemoteDestroy(team);
 
     }
 
     /**
      * Gets a list of online Teams, if at least one of the members is online is
-     * considered as team online.
+     * considered as team online. Every team is listed once.
      * 
      * @return A list of online Teams.
      */
     public List<Team> getTeamsOnlineList() {
-        List<Team> teamsOnline = new ArrayList<>();
-        proxy.getAllPlayers().forEach(player -> {
-            var uuid = player.getUniqueId();
-            var team = getPlayerTeam(uuid);
-            if (team != null) {
-                teamsOnline.add(team);
-            }
-        });
-        return teamsOnline;
+        return onlineTeams.getOnlineTeams();
+    }
+
+    /**
+     * @return The index of the teams online in this proxy. Register it on the
+     *         event manager so it sees logins and disconnections.
+     */
+    public OnlineTeamsIndex getOnlineTeams() {
+        return onlineTeams;
+    }
+
+    /**
+     * Adds points to a team and broadcasts update to other nodes. The points are
+     * added on top of the latest copy of the team, so additions made at the same
+     * time by this or other nodes are never lost. This method is blocking.
+     * 
+     * @param team   The team to add points to.
+     * @param points The amount of points to add.
+     * @return The team with the points added, or null if it doesn't exist.
+     */
+    public Team addPoints(Team team, int points) {
+        return this.computeTeam(team.getTeamID(),
+                current -> current.withAddedPoints(points, System.currentTimeMillis()));
     }
 
     /**
-     * Adds points to a team and broadcasts update to other nodes. This method is
-     * blocking.
+     * Non-blocking version of {@link #addPoints(Team, int)}.
      * 
      * @param team   The team to add points to.
      * @param points The amount of points to add.
+     * @return A stage completed with the team once the update has been propagated.
      */
-    public void addPoints(Team team, int points) {
-        // Update the local copy.
-        team.addPoints(points);
-        team.setLastObtainedPoints(System.currentTimeMillis());
-        // Communicate to the backend and propagate the update
-        this.writeTeamUpdate(team);
-        this.communicateUpdate(team);
+    public CompletionStage<Team> addPointsAsync(Team team, int points) {
+        return this.computeTeamAsync(team.getTeamID(),
+                current -> current.withAddedPoints(points, System.currentTimeMillis()));
     }
 
 }
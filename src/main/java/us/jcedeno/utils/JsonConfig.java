@@ -33,6 +33,21 @@ public class JsonConfig {
         return uri != null ? uri.getAsString() : null;
     }
 
+    public String getString(String key, String defaultValue) {
+        var value = jsonObject.get(key);
+        return value != null && !value.isJsonNull() ? value.getAsString() : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        var value = jsonObject.get(key);
+        return value != null && !value.isJsonNull() ? value.getAsLong() : defaultValue;
+    }
+
+    public JsonObject getObject(String key) {
+        var value = jsonObject.get(key);
+        return value != null && value.isJsonObject() ? value.getAsJsonObject() : null;
+    }
+
     public JsonConfig(String filename) throws Exception {
         this(filename, System.getProperty("user.dir") + File.separatorChar + "secrets");
     }
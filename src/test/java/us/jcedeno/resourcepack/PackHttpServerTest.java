@@ -0,0 +1,186 @@
+package us.jcedeno.resourcepack;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Talks plain HTTP/1.1 to a {@link PackHttpServer} bound to an ephemeral port.
+ *
+ * @author jcedeno
+ */
+class PackHttpServerTest {
+    private static final String PATH = "/pack.zip";
+    private static final String TAG = "abc123";
+    private final byte[] pack = new byte[4096];
+    private Path file;
+    private PackHttpServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < pack.length; i++)
+            pack[i] = (byte) i;
+        file = Files.createTempFile("pack", ".zip");
+        Files.write(file, pack);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (server != null)
+            server.stop();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void servesTheWholePack() throws IOException {
+        start(4);
+        var response = get("");
+        assertEquals(200, response.status);
+        assertEquals("\"" + TAG + "\"", response.headers.get("etag"));
+        assertEquals(Integer.toString(pack.length), response.headers.get("content-length"));
+        assertArrayEquals(pack, response.body);
+    }
+
+    @Test
+    void servesARange() throws IOException {
+        start(4);
+        var response = get("Range: bytes=100-199\r\n");
+        assertEquals(206, response.status);
+        assertEquals("bytes 100-199/" + pack.length, response.headers.get("content-range"));
+        assertArrayEquals(Arrays.copyOfRange(pack, 100, 200), response.body);
+    }
+
+    @Test
+    void ignoresARangeForAnotherVersion() throws IOException {
+        start(4);
+        var response = get("Range: bytes=100-199\r\nIf-Range: \"old\"\r\n");
+        assertEquals(200, response.status);
+        assertArrayEquals(pack, response.body);
+    }
+
+    @Test
+    void answersNotModifiedToAMatchingTag() throws IOException {
+        start(4);
+        var response = get("If-None-Match: \"" + TAG + "\"\r\n");
+        assertEquals(304, response.status);
+        assertEquals(0, response.body.length);
+    }
+
+    @Test
+    void rejectsAnUnsatisfiableRange() throws IOException {
+        start(4);
+        var response = get("Range: bytes=" + pack.length + "-\r\n");
+        assertEquals(416, response.status);
+        assertEquals("bytes */" + pack.length, response.headers.get("content-range"));
+    }
+
+    @Test
+    void turnsAwayDownloadsOverTheLimit() throws Exception {
+        start(1);
+        // Holds the only permit until the read timeout, it never sends its request.
+        try (var idle = connect()) {
+            // Gives the acceptor time to hand it to a worker.
+            Thread.sleep(200);
+            // The 503 is written as soon as the connection is accepted, a request sent along could reset the
+            // connection before the answer is read, so nothing is sent.
+            var response = read(connect());
+            assertEquals(503, response.status);
+            assertEquals("5", response.headers.get("retry-after"));
+        }
+    }
+
+    @Test
+    void parsesSingleRanges() {
+        assertArrayEquals(new long[] { 0, 9 }, PackHttpServer.parseRange("bytes=0-9", 100));
+        assertArrayEquals(new long[] { 90, 99 }, PackHttpServer.parseRange("bytes=90-", 100));
+        assertArrayEquals(new long[] { 80, 99 }, PackHttpServer.parseRange("bytes=-20", 100));
+        assertArrayEquals(new long[] { 50, 99 }, PackHttpServer.parseRange("bytes=50-500", 100));
+        assertNull(PackHttpServer.parseRange("bytes=100-", 100));
+        assertNull(PackHttpServer.parseRange("bytes=20-10", 100));
+        assertNull(PackHttpServer.parseRange("bytes=0-1,5-6", 100));
+        assertNull(PackHttpServer.parseRange("items=0-1", 100));
+        assertNull(PackHttpServer.parseRange("bytes=a-b", 100));
+    }
+
+    @Test
+    void matchesEntityTags() {
+        assertTrue(PackHttpServer.matches("\"" + TAG + "\"", TAG));
+        assertTrue(PackHttpServer.matches("\"x\", W/\"" + TAG + "\"", TAG));
+        assertTrue(PackHttpServer.matches("*", TAG));
+        assertFalse(PackHttpServer.matches("\"x\"", TAG));
+        assertFalse(PackHttpServer.matches(null, TAG));
+    }
+
+    private void start(int maxDownloads) throws IOException {
+        server = new PackHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), PATH, file,
+                () -> TAG, maxDownloads);
+        server.start();
+    }
+
+    private Socket connect() throws IOException {
+        var socket = new Socket(InetAddress.getLoopbackAddress(), server.getAddress().getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private Response get(String extraHeaders) throws IOException {
+        var socket = connect();
+        var request = "GET " + PATH + " HTTP/1.1\r\nHost: localhost\r\n" + extraHeaders + "\r\n";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        return read(socket);
+    }
+
+    private static Response read(Socket socket) throws IOException {
+        // Every response closes the connection, so the whole reply is read up to EOF.
+        try (socket) {
+            return Response.parse(socket.getInputStream().readAllBytes());
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        private Response(int status, Map<String, String> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        private static Response parse(byte[] raw) {
+            int end = 0;
+            while (end + 3 < raw.length
+                    && !(raw[end] == '\r' && raw[end + 1] == '\n' && raw[end + 2] == '\r' && raw[end + 3] == '\n'))
+                end++;
+            var lines = new String(raw, 0, end, StandardCharsets.US_ASCII).split("\r\n");
+            var headers = new HashMap<String, String>();
+            for (int i = 1; i < lines.length; i++) {
+                var colon = lines[i].indexOf(':');
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(), lines[i].substring(colon + 1).trim());
+            }
+            var body = new ByteArrayOutputStream();
+            body.write(raw, Math.min(end + 4, raw.length), Math.max(0, raw.length - end - 4));
+            return new Response(Integer.parseInt(lines[0].split(" ")[1]), headers, body.toByteArray());
+        }
+    }
+
+}
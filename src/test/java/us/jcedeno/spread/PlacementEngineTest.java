@@ -0,0 +1,81 @@
+package us.jcedeno.spread;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The placement on plain numbers, without any proxy around.
+ *
+ * @author jcedeno
+ */
+class PlacementEngineTest {
+
+    @Test
+    void keepsGroupsTogetherAndSpreadsTheLoad() {
+        var load = new int[] { 0, 0 };
+        var assigned = PlacementEngine.assign(new int[] { 4, 4, 2, 2 }, load, new int[] { 6, 6 });
+        assertArrayEquals(new int[] { 0, 1, 0, 1 }, assigned);
+        assertArrayEquals(new int[] { 6, 6 }, load);
+    }
+
+    @Test
+    void placesTheBiggestGroupsFirst() {
+        // Smallest first the group of 3 would fit nowhere.
+        var load = new int[] { 0, 0 };
+        var assigned = PlacementEngine.assign(new int[] { 1, 1, 1, 3 }, load, new int[] { 3, 3 });
+        for (var server : assigned)
+            assertTrue(server >= 0);
+        assertArrayEquals(new int[] { 3, 3 }, load);
+    }
+
+    @Test
+    void prefersTheLeastFilledServer() {
+        var load = new int[] { 5, 1 };
+        var assigned = PlacementEngine.assign(new int[] { 2 }, load, new int[] { 10, 4 });
+        // 7/10 is lower than 3/4.
+        assertArrayEquals(new int[] { 0 }, assigned);
+        assertArrayEquals(new int[] { 7, 1 }, load);
+    }
+
+    @Test
+    void leavesOutGroupsThatFitNowhere() {
+        var load = new int[] { 3, 0 };
+        var assigned = PlacementEngine.assign(new int[] { 5, 2 }, load, new int[] { 4, 0 });
+        assertArrayEquals(new int[] { -1, -1 }, assigned);
+        assertArrayEquals(new int[] { 3, 0 }, load);
+    }
+
+    @Test
+    void neverGoesOverCapacity() {
+        var random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            var servers = 1 + random.nextInt(5);
+            var capacity = new int[servers];
+            var load = new int[servers];
+            for (int i = 0; i < servers; i++) {
+                capacity[i] = random.nextInt(20);
+                load[i] = capacity[i] > 0 ? random.nextInt(capacity[i]) : 0;
+            }
+            var initial = load.clone();
+            var sizes = new int[random.nextInt(10)];
+            for (int i = 0; i < sizes.length; i++)
+                sizes[i] = 1 + random.nextInt(6);
+
+            var assigned = PlacementEngine.assign(sizes, load, capacity);
+            var expected = initial.clone();
+            for (int group = 0; group < sizes.length; group++) {
+                if (assigned[group] >= 0)
+                    expected[assigned[group]] += sizes[group];
+            }
+            assertArrayEquals(expected, load);
+            for (int i = 0; i < servers; i++)
+                assertTrue(load[i] <= capacity[i], "Server " + i + " over capacity: " + Arrays.toString(load));
+        }
+    }
+
+}
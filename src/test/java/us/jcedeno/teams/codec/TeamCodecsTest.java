@@ -0,0 +1,148 @@
+package us.jcedeno.teams.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import us.jcedeno.teams.exceptions.CodecException;
+import us.jcedeno.teams.objects.Team;
+import us.jcedeno.teams.objects.events.PipelineChangeSet;
+import us.jcedeno.teams.objects.events.SendCommandToNodes;
+import us.jcedeno.teams.objects.events.TeamCreationUpdate;
+import us.jcedeno.teams.objects.events.TeamDeletion;
+
+/**
+ * Round trips of the codecs, and payloads crossing between them.
+ *
+ * @author jcedeno
+ */
+class TeamCodecsTest {
+    private final UUID node = UUID.randomUUID();
+    private final Team team = new Team(UUID.randomUUID(), List.of(UUID.randomUUID(), UUID.randomUUID()),
+            "\u00f1and\u00fa", 42, 1234L, 7L);
+
+    @Test
+    void binaryRoundTripsATeam() {
+        var codec = TeamCodecs.binary();
+        assertSameTeam(team, codec.decodeTeam(codec.encodeTeam(team)));
+    }
+
+    @Test
+    void binaryRoundTripsATeamWithoutOptionalFields() {
+        var codec = TeamCodecs.binary();
+        var bare = new Team(UUID.randomUUID(), null, null);
+        var decoded = codec.decodeTeam(codec.encodeTeam(bare));
+        assertSameTeam(bare, decoded);
+        assertNull(decoded.getTeamName());
+        assertNull(decoded.getMembers());
+    }
+
+    @Test
+    void binaryRoundTripsEvents() {
+        var codec = TeamCodecs.binary();
+        var update = codec.decodeCreationUpdate(codec.encodeCreationUpdate(new TeamCreationUpdate(team, node)));
+        assertEquals(node, update.getFrom());
+        assertSameTeam(team, update.getTeam());
+
+        var deletion = codec.decodeDeletion(codec.encodeDeletion(new TeamDeletion(team, node)));
+        assertEquals(node, deletion.getFrom());
+        assertSameTeam(team, deletion.getTeam());
+
+        var changeSet = codec.decodeChangeSet(codec.encodeChangeSet(new PipelineChangeSet("season-2", node, 3)));
+        assertEquals("season-2", changeSet.getNewDataset());
+        assertEquals(node, changeSet.getFrom());
+        assertEquals(3L, changeSet.getGeneration());
+
+        var command = codec.decodeCommand(codec.encodeCommand(new SendCommandToNodes("alert hi", node)));
+        assertEquals("alert hi", command.getCommand());
+        assertEquals(node, command.getFrom());
+    }
+
+    @Test
+    void binaryReadsTheFirstFormatVersion() throws IOException {
+        // Version 1 had no team version after the team id.
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(BinaryTeamCodec.MARKER);
+            out.writeByte(1);
+            out.writeByte(1);
+            out.writeLong(team.getTeamID().getMostSignificantBits());
+            out.writeLong(team.getTeamID().getLeastSignificantBits());
+            var name = "old".getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+        }
+        var decoded = TeamCodecs.binary().decodeTeam(bytes.toByteArray());
+        assertEquals(team.getTeamID(), decoded.getTeamID());
+        assertEquals("old", decoded.getTeamName());
+        assertEquals(0L, decoded.getVersion());
+    }
+
+    @Test
+    void binaryRejectsBrokenPayloads() {
+        var codec = TeamCodecs.binary();
+        var encoded = codec.encodeTeam(team);
+        assertThrows(CodecException.class, () -> codec.decodeTeam(Arrays.copyOf(encoded, encoded.length - 3)));
+        var future = encoded.clone();
+        future[1] = BinaryTeamCodec.FORMAT_VERSION + 1;
+        assertThrows(CodecException.class, () -> codec.decodeTeam(future));
+        assertThrows(CodecException.class, () -> codec.decodeTeam(new byte[] { BinaryTeamCodec.MARKER }));
+    }
+
+    @Test
+    void jsonRoundTripsATeam() {
+        var codec = TeamCodecs.json();
+        assertSameTeam(team, codec.decodeTeam(codec.encodeTeam(team)));
+    }
+
+    @Test
+    void versionedEncodesWithThePreferredCodec() {
+        var binary = TeamCodecs.versioned(TeamCodecs.binary());
+        assertEquals(BinaryTeamCodec.NAME, binary.getName());
+        assertTrue(BinaryTeamCodec.isBinary(binary.encodeTeam(team)));
+        var json = TeamCodecs.versioned(TeamCodecs.json());
+        assertFalse(BinaryTeamCodec.isBinary(json.encodeTeam(team)));
+    }
+
+    @Test
+    void versionedDecodesEitherCodec() {
+        for (var preferred : List.of(TeamCodecs.json(), TeamCodecs.binary())) {
+            var codec = TeamCodecs.versioned(preferred);
+            assertSameTeam(team, codec.decodeTeam(TeamCodecs.json().encodeTeam(team)));
+            assertSameTeam(team, codec.decodeTeam(TeamCodecs.binary().encodeTeam(team)));
+            var update = codec.decodeCreationUpdate(
+                    TeamCodecs.binary().encodeCreationUpdate(new TeamCreationUpdate(team, node)));
+            assertSameTeam(team, update.getTeam());
+        }
+    }
+
+    @Test
+    void findsCodecsByName() {
+        assertSame(TeamCodecs.binary(), TeamCodecs.byName("BINARY"));
+        assertSame(TeamCodecs.json(), TeamCodecs.byName("json"));
+        assertThrows(CodecException.class, () -> TeamCodecs.byName("xml"));
+    }
+
+    private static void assertSameTeam(Team expected, Team actual) {
+        assertEquals(expected.getTeamID(), actual.getTeamID());
+        assertEquals(expected.getTeamName(), actual.getTeamName());
+        assertEquals(expected.getMembers(), actual.getMembers());
+        assertEquals(expected.getPoints(), actual.getPoints());
+        assertEquals(expected.getLastObtainedPoints(), actual.getLastObtainedPoints());
+        assertEquals(expected.getVersion(), actual.getVersion());
+    }
+
+}
@@ -0,0 +1,77 @@
+package us.jcedeno.teams.leaderboard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the tree against a {@link TreeSet} after random changes.
+ *
+ * @author jcedeno
+ */
+class RankedTreeTest {
+
+    @Test
+    void ranksAndGetsAgreeWithASortedSet() {
+        var random = new Random(42);
+        var tree = new RankedTree<Integer>(Comparator.reverseOrder());
+        var expected = new TreeSet<Integer>(Comparator.reverseOrder());
+        for (int step = 0; step < 5000; step++) {
+            var value = random.nextInt(1000);
+            if (expected.contains(value)) {
+                assertTrue(tree.remove(value));
+                expected.remove(value);
+            } else {
+                tree.add(value);
+                expected.add(value);
+            }
+            if (step % 250 == 0)
+                assertMatches(expected, tree);
+        }
+        assertMatches(expected, tree);
+    }
+
+    @Test
+    void ranksValuesThatAreNotInTheTree() {
+        var tree = new RankedTree<Integer>(Comparator.naturalOrder());
+        for (var value : new int[] { 10, 20, 30 })
+            tree.add(value);
+        assertEquals(0, tree.rank(5));
+        assertEquals(1, tree.rank(15));
+        assertEquals(3, tree.rank(35));
+    }
+
+    @Test
+    void handlesMissingValuesAndBounds() {
+        var tree = new RankedTree<Integer>(Comparator.naturalOrder());
+        assertNull(tree.get(0));
+        assertFalse(tree.remove(1));
+        tree.add(1);
+        assertNull(tree.get(-1));
+        assertNull(tree.get(1));
+        assertFalse(tree.remove(2));
+        assertEquals(1, tree.size());
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertNull(tree.get(0));
+    }
+
+    private static void assertMatches(TreeSet<Integer> expected, RankedTree<Integer> tree) {
+        assertEquals(expected.size(), tree.size());
+        var sorted = new ArrayList<>(expected);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(sorted.get(i), tree.get(i));
+            assertEquals(i, tree.rank(sorted.get(i)));
+        }
+        assertNull(tree.get(sorted.size()));
+    }
+
+}
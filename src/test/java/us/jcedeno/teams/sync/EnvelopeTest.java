@@ -0,0 +1,76 @@
+package us.jcedeno.teams.sync;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reading the header of the messages, in both layouts.
+ *
+ * @author jcedeno
+ */
+class EnvelopeTest {
+    private final UUID node = UUID.randomUUID();
+    private final byte[] payload = { 10, 20, 30 };
+
+    @Test
+    void readsBackTheHeader() {
+        var before = System.currentTimeMillis();
+        var message = Envelope.wrap(node, EventType.CREATE, payload);
+        assertEquals(Envelope.VERSION, message[0]);
+        assertTrue(Envelope.isFrom(message, node));
+        assertFalse(Envelope.isFrom(message, UUID.randomUUID()));
+        assertEquals(node, Envelope.nodeOf(message));
+        assertEquals(EventType.CREATE, Envelope.typeOf(message, DedsafioChannels.EVENTS));
+        var sentAt = Envelope.sentAtOf(message);
+        assertTrue(sentAt >= before && sentAt <= System.currentTimeMillis());
+        assertArrayEquals(payload, Envelope.payloadOf(message));
+    }
+
+    @Test
+    void readsTheFirstLayout() {
+        // Version 1 had no send time.
+        var message = ByteBuffer.allocate(1 + 16 + 1 + payload.length).put((byte) 1)
+                .putLong(node.getMostSignificantBits()).putLong(node.getLeastSignificantBits())
+                .put(EventType.DESTROY.getId()).put(payload).array();
+        assertTrue(Envelope.isFrom(message, node));
+        assertEquals(EventType.DESTROY, Envelope.typeOf(message, DedsafioChannels.EVENTS));
+        assertEquals(-1L, Envelope.sentAtOf(message));
+        assertArrayEquals(payload, Envelope.payloadOf(message));
+    }
+
+    @Test
+    void dropsTypesOfOtherChannels() {
+        var message = Envelope.wrap(node, EventType.COMMAND, payload);
+        assertNull(Envelope.typeOf(message, DedsafioChannels.EVENTS));
+        assertEquals(EventType.COMMAND, Envelope.typeOf(message, DedsafioChannels.CMD));
+    }
+
+    @Test
+    void rejectsMalformedHeaders() {
+        var message = Envelope.wrap(node, EventType.CREATE, payload);
+        var truncated = new byte[10];
+        System.arraycopy(message, 0, truncated, 0, truncated.length);
+        assertNull(Envelope.typeOf(truncated, DedsafioChannels.EVENTS));
+        assertFalse(Envelope.isFrom(truncated, node));
+
+        var future = message.clone();
+        future[0] = Envelope.VERSION + 1;
+        assertNull(Envelope.typeOf(future, DedsafioChannels.EVENTS));
+        assertFalse(Envelope.isFrom(future, node));
+
+        assertNull(Envelope.typeOf(new byte[0], DedsafioChannels.EVENTS));
+
+        var unknown = message.clone();
+        unknown[17] = 127;
+        assertNull(Envelope.typeOf(unknown, DedsafioChannels.EVENTS));
+    }
+
+}